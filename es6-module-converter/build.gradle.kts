@@ -1,6 +1,7 @@
 plugins {
     java
     application
+    id("me.champeau.gradle.jmh") version "0.5.0"
 }
 
 java {
@@ -30,3 +31,21 @@ application {
 val test by tasks.getting(Test::class) {
     useJUnitPlatform()
 }
+
+// Benchmarks of the individual passes, run with './gradlew jmh'
+jmh {
+    jmhVersion = "1.23"
+    fork = 1
+    warmupIterations = 3
+    iterations = 5
+    benchmarkMode = listOf("avgt")
+    timeUnit = "ms"
+}
+
+// Runs the full conversion on generated corpora of increasing size, e.g. './gradlew scalabilityBenchmark -Psizes=1000,10000'
+tasks.register<JavaExec>("scalabilityBenchmark") {
+    classpath = sourceSets["jmh"].runtimeClasspath
+    main = "eu.cqse.ScalabilityBenchmark"
+    maxHeapSize = "8g"
+    args = (project.findProperty("sizes") as String? ?: "1000,10000,50000").split(",")
+}
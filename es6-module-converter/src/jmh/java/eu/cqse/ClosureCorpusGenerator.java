@@ -0,0 +1,211 @@
+package eu.cqse;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Generates a synthetic closure library with the given number of files, so that the scalability of the converter
+ * can be tested beyond the size of the real closure library.
+ * <p>
+ * The files are written to closure/goog below the target directory, whose path has to contain closure-library as
+ * the converter ignores all other files. Most files goog.provide classes with prototype
+ * members whose constructors inherit from classes of required files via goog.inherits. The remaining files are
+ * goog.modules with ES6 classes, which are not required by any other file. The generated corpus only depends on
+ * the settings and the seed.
+ */
+public class ClosureCorpusGenerator {
+
+	/** The number of files per directory. */
+	private static final int FILES_PER_PACKAGE = 100;
+
+	/** The number of files of the corpus without base.js and goog.js. */
+	int fileCount;
+
+	int classesPerFile = 3;
+	int membersPerClass = 8;
+
+	/** The number of files each file requires. */
+	int requireFanOut = 4;
+
+	/** The probability that a class inherits from a class of a required file. */
+	double inheritanceRatio = 0.5;
+
+	/** The probability that a file additionally forward declares a later file, which results in dependency cycles. */
+	double cycleRatio = 0.01;
+
+	/** The fraction of goog.module files. */
+	double moduleRatio = 0.1;
+
+	long seed = 42;
+
+	public ClosureCorpusGenerator(int fileCount) {
+		this.fileCount = fileCount;
+	}
+
+	/**
+	 * Writes the corpus to the given directory, which is cleared first.
+	 *
+	 * @return the namespaces provided by the generated files.
+	 */
+	public Set<String> generate(File targetDir) throws IOException {
+		FileUtils.safeDeleteDir(targetDir.toPath());
+		File googDir = new File(targetDir, "closure/goog");
+		googDir.mkdirs();
+		FileUtils.writeFileContent(new File(googDir, ReaderPass.BASE_JS), "var goog = goog || {};\n");
+		FileUtils.writeFileContent(new File(googDir, ReaderPass.GOOG_JS), "goog.module('goog');\n\nconst VERSION = 1;\n\nexports = {VERSION};\n");
+
+		Random random = new Random(seed);
+		Set<String> providedNamespaces = new LinkedHashSet<>();
+		// Forward declarations make the converted files import goog, so goog.js has to be selected
+		providedNamespaces.add("goog");
+		for (int i = 0; i < fileCount; i++) {
+			File file = new File(googDir, getPackage(i) + "/f" + i + ".js");
+			file.getParentFile().mkdirs();
+			if (isModule(i)) {
+				FileUtils.writeFileContent(file, generateModule(i, random));
+				providedNamespaces.add(getModuleNamespace(i));
+			} else {
+				FileUtils.writeFileContent(file, generateProvideFile(i, random));
+				for (int c = 0; c < classesPerFile; c++) {
+					providedNamespaces.add(getClassNamespace(i, c));
+				}
+			}
+		}
+		return providedNamespaces;
+	}
+
+	private String generateProvideFile(int fileIndex, Random random) {
+		List<Integer> requiredFiles = chooseRequiredFiles(fileIndex, random, true);
+		StringBuilder content = new StringBuilder();
+		content.append("/**\n * @fileoverview Generated file ").append(fileIndex).append(".\n */\n\n");
+		for (int c = 0; c < classesPerFile; c++) {
+			content.append("goog.provide('").append(getClassNamespace(fileIndex, c)).append("');\n");
+		}
+		content.append('\n');
+		for (int requiredFile : requiredFiles) {
+			// Like in the closure library, cycles are only created by forward declarations, as goog.require cycles
+			// are rejected by Closure
+			String requireFunction = requiredFile > fileIndex ? "forwardDeclare" : "require";
+			content.append("goog.").append(requireFunction).append("('").append(getClassNamespace(requiredFile, 0))
+					.append("');\n");
+		}
+
+		for (int c = 0; c < classesPerFile; c++) {
+			String className = getClassNamespace(fileIndex, c);
+			String superClass = null;
+			// Only inherit from earlier files, as goog.inherits requires the super class to be loaded first
+			List<Integer> superClassCandidates = new ArrayList<>();
+			requiredFiles.stream().filter(requiredFile -> requiredFile < fileIndex).forEach(superClassCandidates::add);
+			if (!superClassCandidates.isEmpty() && random.nextDouble() < inheritanceRatio) {
+				superClass = getClassNamespace(superClassCandidates.get(random.nextInt(superClassCandidates.size())), 0);
+			}
+
+			content.append("\n\n/**\n * @param {number} value\n * @constructor\n");
+			if (superClass != null) {
+				content.append(" * @extends {").append(superClass).append("}\n");
+			}
+			content.append(" */\n").append(className).append(" = function(value) {\n");
+			if (superClass != null) {
+				content.append("  ").append(className).append(".base(this, 'constructor', value);\n");
+			}
+			content.append("  /** @private {number} */\n  this.value").append(c).append("_ = value;\n};\n");
+			if (superClass != null) {
+				content.append("goog.inherits(").append(className).append(", ").append(superClass).append(");\n");
+			}
+
+			for (int m = 0; m < membersPerClass; m++) {
+				String parameterType = requiredFiles.isEmpty() ? "number" :
+						"!" + getClassNamespace(requiredFiles.get(m % requiredFiles.size()), 0);
+				content.append("\n\n/**\n * @param {").append(parameterType).append("} other\n * @return {number}\n */\n")
+						.append(className).append(".prototype.member").append(m).append(" = function(other) {\n")
+						.append("  if (this.value").append(c).append("_ > ").append(m).append(") {\n")
+						.append("    return this.value").append(c).append("_ - ").append(m).append(";\n  }\n")
+						.append("  return ").append(m).append(";\n};\n");
+			}
+		}
+		return content.toString();
+	}
+
+	private String generateModule(int fileIndex, Random random) {
+		List<Integer> requiredFiles = chooseRequiredFiles(fileIndex, random, false);
+		StringBuilder content = new StringBuilder();
+		content.append("/**\n * @fileoverview Generated module ").append(fileIndex).append(".\n */\n\n");
+		content.append("goog.module('").append(getModuleNamespace(fileIndex)).append("');\n\n");
+		for (int requiredFile : requiredFiles) {
+			content.append("const C").append(requiredFile).append(" = goog.require('")
+					.append(getClassNamespace(requiredFile, 0)).append("');\n");
+		}
+
+		List<String> classNames = new ArrayList<>();
+		for (int c = 0; c < classesPerFile; c++) {
+			String className = "Module" + fileIndex + "Class" + c;
+			classNames.add(className);
+			content.append("\n\nclass ").append(className);
+			boolean inherits = !requiredFiles.isEmpty() && random.nextDouble() < inheritanceRatio;
+			if (inherits) {
+				content.append(" extends C").append(requiredFiles.get(random.nextInt(requiredFiles.size())));
+			}
+			content.append(" {\n  /** @param {number} value */\n  constructor(value) {\n");
+			if (inherits) {
+				content.append("    super(value);\n");
+			}
+			content.append("    /** @private {number} */\n    this.moduleValue_ = value;\n  }\n");
+			for (int m = 0; m < membersPerClass; m++) {
+				content.append("\n  /** @return {number} */\n  moduleMember").append(m).append("() {\n")
+						.append("    return this.moduleValue_ + ").append(m).append(";\n  }\n");
+			}
+			content.append("}\n");
+		}
+		content.append("\nexports = {").append(String.join(", ", classNames)).append("};\n");
+		return content.toString();
+	}
+
+	/**
+	 * Chooses the files the given file requires. Modules are never required, so only goog.provide files are
+	 * chosen. Later files are only chosen if a cycle should be created.
+	 */
+	private List<Integer> chooseRequiredFiles(int fileIndex, Random random, boolean mayCreateCycle) {
+		Set<Integer> requiredFiles = new LinkedHashSet<>();
+		if (fileIndex > 0) {
+			for (int i = 0; i < requireFanOut; i++) {
+				// Prefer files close to the requiring file, like files of the same package in a real code base
+				int distance = 1 + (int) Math.abs(random.nextGaussian() * FILES_PER_PACKAGE);
+				requiredFiles.add(Math.max(0, fileIndex - distance));
+			}
+		}
+		if (mayCreateCycle && fileIndex + 1 < fileCount && random.nextDouble() < cycleRatio) {
+			requiredFiles.add(fileIndex + 1 + random.nextInt(Math.min(FILES_PER_PACKAGE, fileCount - fileIndex - 1)));
+		}
+		requiredFiles.removeIf(requiredFile -> isModule(requiredFile));
+		return new ArrayList<>(requiredFiles);
+	}
+
+	/**
+	 * Returns whether the given file is generated as module. This is decided up front with a separate random
+	 * generator, so that files can know whether other files are modules before these are generated.
+	 */
+	private boolean isModule(int fileIndex) {
+		return new Random(seed * 31 + fileIndex).nextDouble() < moduleRatio;
+	}
+
+	private static String getPackage(int fileIndex) {
+		return "p" + fileIndex / FILES_PER_PACKAGE;
+	}
+
+	/**
+	 * Class names are unique across files like in the closure library, as files that are merged to resolve a cycle
+	 * must not declare the same short name.
+	 */
+	private static String getClassNamespace(int fileIndex, int classIndex) {
+		return "gen." + getPackage(fileIndex) + ".f" + fileIndex + ".F" + fileIndex + "Class" + classIndex;
+	}
+
+	private static String getModuleNamespace(int fileIndex) {
+		return "gen." + getPackage(fileIndex) + ".module" + fileIndex;
+	}
+}
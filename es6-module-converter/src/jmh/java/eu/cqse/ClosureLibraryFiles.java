@@ -0,0 +1,23 @@
+package eu.cqse;
+
+import java.io.File;
+
+/**
+ * Locates the closure library files the benchmarks run on. The location of the closure library can be overridden
+ * with the system property converter.closureLibrary.
+ */
+public class ClosureLibraryFiles {
+
+	public static final File CLOSURE_LIBRARY = new File(System.getProperty("converter.closureLibrary", "../closure-library"));
+	public static final File GOOG_DIR = new File(CLOSURE_LIBRARY, "closure/goog");
+	public static final File THIRD_PARTY_GOOG_DIR = new File(CLOSURE_LIBRARY, "third_party/closure/goog");
+
+	/** Returns the given file relative to closure/goog. */
+	public static File getFile(String relativePath) {
+		File file = new File(GOOG_DIR, relativePath);
+		if (!file.isFile()) {
+			throw new IllegalStateException(file.getAbsolutePath() + " does not exist, check out the closure library submodule");
+		}
+		return file;
+	}
+}
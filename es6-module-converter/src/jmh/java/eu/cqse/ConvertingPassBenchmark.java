@@ -0,0 +1,49 @@
+package eu.cqse;
+
+import eu.cqse.es6.Es6ClassConversionPass;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Measures the conversion of a single file to an ES6 module. The setup runs the preceding passes on the whole
+ * closure library in memory, so that the file is converted against its real dependencies.
+ */
+@State(Scope.Benchmark)
+public class ConvertingPassBenchmark {
+
+	@Param({"events/events.js", "dom/dom.js", "ui/control.js"})
+	public String file;
+
+	private File jsFile;
+	private String content;
+	private ReaderPass readerPass;
+	private ConvertingPass convertingPass;
+
+	@Setup
+	public void setUp() throws IOException {
+		jsFile = ClosureLibraryFiles.getFile(file);
+
+		// The sources are never flushed, so the closure library on disk is not modified
+		SourceStore sources = new SourceStore();
+		for (File dir : new File[]{ClosureLibraryFiles.GOOG_DIR, ClosureLibraryFiles.THIRD_PARTY_GOOG_DIR}) {
+			new SpecificFixesApplier(dir.toPath(), sources, ConversionCache.DISABLED).fixAllInPlace();
+			new Es6ClassConversionPass(sources, ConversionCache.DISABLED).process(dir);
+		}
+		readerPass = new ReaderPass(sources);
+		readerPass.process(ClosureLibraryFiles.GOOG_DIR, ClosureLibraryFiles.THIRD_PARTY_GOOG_DIR);
+
+		content = sources.read(jsFile);
+		convertingPass = new ConvertingPass(sources, ConversionCache.DISABLED);
+	}
+
+	@Benchmark
+	public String convertFile() {
+		return convertingPass.convertFile(jsFile, readerPass, content);
+	}
+}
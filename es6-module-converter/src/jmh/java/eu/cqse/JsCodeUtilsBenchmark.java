@@ -0,0 +1,46 @@
+package eu.cqse;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/** Measures the extraction of the definitions of all prototype members of a file. */
+@State(Scope.Benchmark)
+public class JsCodeUtilsBenchmark {
+
+	private static final Pattern PROTOTYPE_MEMBER_PATTERN = Pattern.compile("(?m)^[\\w.]+\\.prototype\\.\\w+(\\s?=\\s*)");
+
+	@Param({"events/events.js", "dom/dom.js", "ui/control.js"})
+	public String file;
+
+	private String content;
+
+	/** The start offsets of all prototype members, so that the benchmark does not measure the search for them. */
+	private final List<Integer> memberOffsets = new ArrayList<>();
+
+	@Setup
+	public void setUp() {
+		content = FileUtils.getFileContentSafe(ClosureLibraryFiles.getFile(file));
+		Matcher matcher = PROTOTYPE_MEMBER_PATTERN.matcher(content);
+		while (matcher.find()) {
+			memberOffsets.add(matcher.start());
+		}
+	}
+
+	@Benchmark
+	public void getDefinition(Blackhole blackhole) {
+		Matcher matcher = PROTOTYPE_MEMBER_PATTERN.matcher(content);
+		for (int offset : memberOffsets) {
+			matcher.find(offset);
+			blackhole.consume(JsCodeUtils.getDefinition(content, matcher, 1));
+		}
+	}
+}
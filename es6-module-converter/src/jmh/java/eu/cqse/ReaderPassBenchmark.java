@@ -0,0 +1,35 @@
+package eu.cqse;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.File;
+
+/** Measures the extraction of provides and requires from a single file. */
+@State(Scope.Benchmark)
+public class ReaderPassBenchmark {
+
+	@Param({"events/events.js", "dom/dom.js", "ui/control.js"})
+	public String file;
+
+	private File jsFile;
+	private String content;
+
+	@Setup
+	public void setUp() {
+		jsFile = ClosureLibraryFiles.getFile(file);
+		content = FileUtils.getFileContentSafe(jsFile);
+	}
+
+	@Benchmark
+	public ReaderPass processJsFile() {
+		SourceStore sources = new SourceStore();
+		sources.write(jsFile, content);
+		ReaderPass readerPass = new ReaderPass(sources);
+		readerPass.processJsFile(jsFile);
+		return readerPass;
+	}
+}
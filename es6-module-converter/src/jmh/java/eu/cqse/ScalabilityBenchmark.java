@@ -0,0 +1,61 @@
+package eu.cqse;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Runs the full conversion on synthetic corpora of increasing size (see {@link ClosureCorpusGenerator}) and writes a
+ * run report with wall time and peak heap usage per pass for each size. The sizes can be passed as arguments and
+ * default to 1k, 10k and 50k files. Run with './gradlew scalabilityBenchmark -Psizes=1000,10000'.
+ */
+public class ScalabilityBenchmark {
+
+	private static final File WORK_DIR = new File("build/scalability");
+	private static final File REPORT_DIR = new File("build/reports/scalability");
+
+	public static void main(String[] args) throws IOException, InterruptedException {
+		List<Integer> sizes = new ArrayList<>();
+		for (String arg : args) {
+			sizes.add(Integer.parseInt(arg.trim()));
+		}
+		if (sizes.isEmpty()) {
+			sizes = List.of(1_000, 10_000, 50_000);
+		}
+
+		List<String> summary = new ArrayList<>();
+		for (int size : sizes) {
+			RunReport report = run(size);
+			for (RunReport.PassReport pass : report.passes) {
+				summary.add(String.format("%8d  %-30s %10.0fms %8dMB", size, pass.name, pass.wallMillis,
+						pass.peakHeapBytes / (1024 * 1024)));
+			}
+		}
+
+		System.out.println("\r\n==== Scalability ====");
+		System.out.println(String.format("%8s  %-30s %12s %10s", "files", "pass", "wall time", "peak heap"));
+		summary.forEach(System.out::println);
+	}
+
+	private static RunReport run(int size) throws IOException, InterruptedException {
+		// The converter only processes files below a directory whose name contains closure-library
+		File corpusDir = new File(WORK_DIR, size + "/closure-library");
+		File outputDir = new File(WORK_DIR, size + "/ts-closure-library/lib");
+		System.out.println("INFO: Generating " + size + " files in " + corpusDir);
+		Set<String> namespaces = new ClosureCorpusGenerator(size).generate(corpusDir);
+
+		// Don't attribute garbage of the generation or previous runs to the first pass
+		System.gc();
+
+		RunReport report = new RunReport();
+		// Caches and indices are disabled, so that each pass does its full work
+		Es6ModuleMasterConverter.convert(report, corpusDir, outputDir, Map.of("default", namespaces),
+				ConversionCache.DISABLED, ReaderPassIndex.DISABLED);
+		report.setCounter("files", size);
+		report.writeTo(new File(REPORT_DIR, "run-report-" + size + ".json"));
+		return report;
+	}
+}
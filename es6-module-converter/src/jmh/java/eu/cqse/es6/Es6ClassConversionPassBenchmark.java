@@ -0,0 +1,33 @@
+package eu.cqse.es6;
+
+import eu.cqse.ClosureLibraryFiles;
+import eu.cqse.ConversionCache;
+import eu.cqse.FileUtils;
+import eu.cqse.SourceStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Measures the conversion of the classes of a single file to ES6 classes. */
+@State(Scope.Benchmark)
+public class Es6ClassConversionPassBenchmark {
+
+	@Param({"events/events.js", "dom/dom.js", "ui/control.js"})
+	public String file;
+
+	private String content;
+	private Es6ClassConversionPass pass;
+
+	@Setup
+	public void setUp() {
+		content = FileUtils.getFileContentSafe(ClosureLibraryFiles.getFile(file));
+		pass = new Es6ClassConversionPass(new SourceStore(), ConversionCache.DISABLED);
+	}
+
+	@Benchmark
+	public String convertClasses() {
+		return pass.convertClasses(content);
+	}
+}
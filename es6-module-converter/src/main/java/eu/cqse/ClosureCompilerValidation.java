@@ -0,0 +1,140 @@
+package eu.cqse;
+
+import com.google.javascript.jscomp.CheckLevel;
+import com.google.javascript.jscomp.CommandLineRunner;
+import com.google.javascript.jscomp.CompilationLevel;
+import com.google.javascript.jscomp.Compiler;
+import com.google.javascript.jscomp.CompilerOptions;
+import com.google.javascript.jscomp.DiagnosticGroup;
+import com.google.javascript.jscomp.DiagnosticGroups;
+import com.google.javascript.jscomp.JSError;
+import com.google.javascript.jscomp.Result;
+import com.google.javascript.jscomp.SourceFile;
+import com.google.javascript.jscomp.WarningLevel;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Validates the converted sources by compiling them in ADVANCED mode with the Closure compiler. The compiler runs
+ * in-process on the in-memory sources and its diagnostics are returned as {@link Diagnostic} objects.
+ * <p>
+ * The sources are parsed single-threaded within the compilation, as the compiler has no option for parallel
+ * parsing and the checks of ADVANCED mode need the whole program, so the inputs cannot be sharded.
+ */
+class ClosureCompilerValidation {
+
+	/** Diagnostic groups that are not reported at all. All other groups are reported as errors. */
+	private static final List<String> DISABLED_CHECKS = List.of("extraRequire", "deprecated", "lintChecks",
+			"analyzerChecks", "strictMissingProperties", "strictPrimitiveOperators", "messageConventions");
+
+	/** Diagnostic groups that are only reported as warnings. */
+	private static final List<String> WARNING_CHECKS = List.of("unusedLocalVariables");
+
+	private static final List<String> EXCLUDED_DIRECTORIES = List.of("closure-deps/", "doc/");
+	private static final List<String> EXCLUDED_PATH_PARTS = List.of("node_modules",
+			"debug_loader_integration_tests/testdata/");
+	private static final String[] EXCLUDED_FILE_SUFFIXES = {"_test.js", "_perf.js", "tester.js",
+			"promise/testsuiteadapter.js", "relativecommontests.js", "osapi/osapi.js", "svgpan/svgpan.js",
+			"alltests.js", "protractor_spec.js", "protractor.conf.js", "browser_capabilities.js",
+			"generate_closure_unit_tests.js"};
+
+	private final SourceStore sources;
+	private final File outputDir;
+
+	ClosureCompilerValidation(SourceStore sources, File outputDir) {
+		this.sources = sources;
+		this.outputDir = outputDir;
+	}
+
+	/**
+	 * Compiles all converted js files and writes the compiled code to the given file.
+	 *
+	 * @return the errors and warnings reported by the compiler, errors first.
+	 */
+	List<Diagnostic> validate(File compiledOutput) throws IOException {
+		List<SourceFile> inputs = sources.listFiles(outputDir).stream().filter(this::isValidatedFile)
+				.map(file -> SourceFile.fromCode(getRelativePath(file), sources.read(file)))
+				.collect(Collectors.toList());
+
+		Compiler compiler = new Compiler();
+		Result result = compiler.compile(CommandLineRunner.getBuiltinExterns(CompilerOptions.Environment.BROWSER),
+				inputs, createOptions());
+
+		List<Diagnostic> diagnostics = new ArrayList<>();
+		result.errors.forEach(error -> diagnostics.add(new Diagnostic(CheckLevel.ERROR, error)));
+		result.warnings.forEach(warning -> diagnostics.add(new Diagnostic(CheckLevel.WARNING, warning)));
+		if (result.success) {
+			FileUtils.writeFileContent(compiledOutput, compiler.toSource());
+		}
+		return diagnostics;
+	}
+
+	private static CompilerOptions createOptions() {
+		CompilerOptions options = new CompilerOptions();
+		CompilationLevel.ADVANCED_OPTIMIZATIONS.setOptionsForCompilationLevel(options);
+		WarningLevel.VERBOSE.setOptionsForWarningLevel(options);
+		DiagnosticGroups.getRegisteredGroups().values()
+				.forEach(group -> options.setWarningLevel(group, CheckLevel.ERROR));
+		setWarningLevel(options, DISABLED_CHECKS, CheckLevel.OFF);
+		setWarningLevel(options, WARNING_CHECKS, CheckLevel.WARNING);
+		return options;
+	}
+
+	private static void setWarningLevel(CompilerOptions options, List<String> groupNames, CheckLevel level) {
+		DiagnosticGroups diagnosticGroups = new DiagnosticGroups();
+		for (String groupName : groupNames) {
+			DiagnosticGroup group = diagnosticGroups.forName(groupName);
+			if (group == null) {
+				throw new IllegalArgumentException("Unknown diagnostic group " + groupName);
+			}
+			options.setWarningLevel(group, level);
+		}
+	}
+
+	private boolean isValidatedFile(File file) {
+		String relativePath = getRelativePath(file);
+		return relativePath.endsWith(".js")
+				&& EXCLUDED_DIRECTORIES.stream().noneMatch(relativePath::startsWith)
+				&& EXCLUDED_PATH_PARTS.stream().noneMatch(relativePath::contains)
+				&& !StringUtils.endsWithOneOf(relativePath, EXCLUDED_FILE_SUFFIXES);
+	}
+
+	private String getRelativePath(File file) {
+		return outputDir.toPath().relativize(file.toPath()).toString().replace('\\', '/');
+	}
+
+	/** A single error or warning reported by the Closure compiler. */
+	static class Diagnostic {
+		final CheckLevel level;
+		final String key;
+		final String sourceName;
+		final int lineNumber;
+		final int column;
+		final String description;
+
+		private Diagnostic(CheckLevel level, JSError error) {
+			this.level = level;
+			this.key = error.getType().key;
+			this.sourceName = error.getSourceName();
+			this.lineNumber = error.getLineno();
+			this.column = error.getCharno();
+			this.description = error.getDescription();
+		}
+
+		@Override
+		public String toString() {
+			return level + ": " + sourceName + ":" + lineNumber + ":" + column + " " + description + " [" + key + "]";
+		}
+	}
+
+	/** Sorts diagnostics by severity, file and position. */
+	static final Comparator<Diagnostic> DIAGNOSTIC_ORDER = Comparator.comparing((Diagnostic diagnostic) -> diagnostic.level)
+			.thenComparing(diagnostic -> String.valueOf(diagnostic.sourceName))
+			.thenComparingInt(diagnostic -> diagnostic.lineNumber)
+			.thenComparingInt(diagnostic -> diagnostic.column);
+}
@@ -0,0 +1,175 @@
+package eu.cqse;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Persistent, content-addressed cache for the results of the per-file conversion steps.
+ * <p>
+ * Each entry is stored under the SHA-256 of the step name, the input of the step (file content, path and
+ * dependency slice) and the byte code of the classes that implement the fix and conversion rules. Changing
+ * any of these therefore automatically results in a cache miss, so the cache never has to be invalidated
+ * manually. Lookups and stores are thread-safe.
+ * <p>
+ * Entries are grouped by step and rules hash. When a cache is created, the entries of other rules hashes and the
+ * entries that have not been used for {@link #MAX_ENTRY_AGE} are removed, so the cache does not grow without bound.
+ */
+public class ConversionCache {
+
+	/** A cache that never stores anything, i.e. always runs the conversion. */
+	public static final ConversionCache DISABLED = new ConversionCache(null, "");
+
+	/** Entries that have not been used for this long are removed when a cache is created. */
+	static final Duration MAX_ENTRY_AGE = Duration.ofDays(30);
+
+	private final File cacheDir;
+	private final String rulesHash;
+
+	private final AtomicInteger hits = new AtomicInteger();
+	private final AtomicInteger misses = new AtomicInteger();
+
+	/**
+	 * Creates a cache in the given directory. The given classes are the ones implementing the conversion rules,
+	 * whose byte code becomes part of every cache key.
+	 */
+	public ConversionCache(File cacheDir, Class<?>... ruleClasses) {
+		this(cacheDir, hashByteCode(ruleClasses));
+		int removedEntries = purge(System.currentTimeMillis() - MAX_ENTRY_AGE.toMillis());
+		if (removedEntries > 0) {
+			System.out.println("INFO: Removed " + removedEntries + " outdated conversion cache entries");
+		}
+	}
+
+	private ConversionCache(File cacheDir, String rulesHash) {
+		this.cacheDir = cacheDir;
+		this.rulesHash = rulesHash;
+	}
+
+	/**
+	 * Returns the cached result of the given step for the given input key. If there is none yet, the conversion
+	 * is run and its result is stored.
+	 */
+	public String computeIfAbsent(String step, String inputKey, Supplier<String> conversion) {
+		if (cacheDir == null) {
+			return conversion.get();
+		}
+		File entry = new File(new File(new File(cacheDir, step), rulesHash), hash(inputKey) + ".js");
+		if (entry.isFile()) {
+			hits.incrementAndGet();
+			// The modification time marks when the entry has been used last
+			entry.setLastModified(System.currentTimeMillis());
+			return FileUtils.getFileContentSafe(entry);
+		}
+		misses.incrementAndGet();
+		String result = conversion.get();
+		store(entry, result);
+		return result;
+	}
+
+	/**
+	 * Removes the entries of other rules hashes, including entries in the layout without rules hash directories,
+	 * and the entries that have not been used since the given time.
+	 *
+	 * @return the number of removed entries
+	 */
+	int purge(long minLastUsed) {
+		File[] stepDirs = cacheDir.listFiles(File::isDirectory);
+		if (stepDirs == null) {
+			return 0;
+		}
+		int removedEntries = 0;
+		for (File stepDir : stepDirs) {
+			for (File generation : Objects.requireNonNull(stepDir.listFiles())) {
+				if (!generation.getName().equals(rulesHash)) {
+					removedEntries += generation.isDirectory() ? Objects.requireNonNull(generation.list()).length : 1;
+					deleteRecursively(generation);
+					continue;
+				}
+				for (File entry : Objects.requireNonNull(generation.listFiles())) {
+					if (entry.lastModified() < minLastUsed && entry.delete()) {
+						removedEntries++;
+					}
+				}
+			}
+		}
+		return removedEntries;
+	}
+
+	private static void deleteRecursively(File file) {
+		try {
+			FileUtils.safeDeleteDir(file.toPath());
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static void store(File entry, String content) {
+		try {
+			entry.getParentFile().mkdirs();
+			// Write to a temporary file first so that concurrent readers never see partially written entries
+			File tempFile = File.createTempFile("entry", ".tmp", entry.getParentFile());
+			FileUtils.writeFileContent(tempFile, content);
+			Files.move(tempFile.toPath(), entry.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	public int getHits() {
+		return hits.get();
+	}
+
+	public int getMisses() {
+		return misses.get();
+	}
+
+	/** Returns the hex encoded SHA-256 of the given parts. */
+	public static String hash(String... parts) {
+		Hasher hasher = Hashing.sha256().newHasher();
+		for (String part : parts) {
+			// Prefix each part with its length so that different splits of the same string hash differently
+			hasher.putInt(part.length()).putString(part, Charsets.UTF_8);
+		}
+		return hasher.hash().toString();
+	}
+
+	/** Returns the hex encoded SHA-256 of the byte code of the given classes and of their nested classes. */
+	public static String hashByteCode(Class<?>... classes) {
+		Hasher hasher = Hashing.sha256().newHasher();
+		for (Class<?> clazz : classes) {
+			putByteCode(hasher, clazz);
+		}
+		return hasher.hash().toString();
+	}
+
+	private static void putByteCode(Hasher hasher, Class<?> clazz) {
+		String resource = clazz.getName().replace('.', '/') + ".class";
+		try (InputStream byteCode = clazz.getClassLoader().getResourceAsStream(resource)) {
+			if (byteCode == null) {
+				throw new IllegalStateException("Byte code of " + clazz.getName() + " not found");
+			}
+			hasher.putBytes(ByteStreams.toByteArray(byteCode));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		// The order of the declared classes is unspecified, so sort them to keep the hash stable
+		Arrays.stream(clazz.getDeclaredClasses()).sorted(Comparator.comparing(Class::getName))
+				.forEach(nestedClass -> putByteCode(hasher, nestedClass));
+	}
+}
@@ -3,10 +3,12 @@ package eu.cqse;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.SetMultimap;
 import com.google.common.collect.Sets;
+import eu.cqse.NamespacePatternCache.EShape;
 
 import java.io.File;
-import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
@@ -23,7 +25,6 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
-import static eu.cqse.FileUtils.getFileContentSafe;
 import static eu.cqse.ReaderPass.BASE_JS;
 import static eu.cqse.ReaderPass.GOOG_JS;
 import static java.util.stream.Collectors.toList;
@@ -126,64 +127,131 @@ class ConvertingPass {
 	private static final Pattern GOOG_NAMESPACE_PATTERN = Pattern.compile("(" + String.join("|", GOOG_ELEMENTS_NEED_IMPORT) + ")");
 	private static final Pattern IMPORT_BLOCK_PATTERN = Pattern.compile("(?m)(^import .*[\r\n]+)+");
 
-	void process(ReaderPass readerPass) throws IOException {
-		for (File file : readerPass.providesByFile.keySet()) {
-			String content = getFileContentSafe(file);
+	/**
+	 * Namespaces that are implicitly imported by {@link #extendRequires(File, ReaderPass, String)} even if the file
+	 * does not require them. Their location is therefore part of every file's dependency slice.
+	 */
+	private static final List<String> IMPLICITLY_REQUIRED_NAMESPACES = List.of("goog", "goog.dispose",
+			"goog.disposeAll", "goog.a11y.aria.State", "goog.string.Const", "goog.string");
+
+	/** The maximum number of compiled namespace patterns, which is enough for all namespaces of the closure library. */
+	private static final long PATTERN_CACHE_SIZE = 50_000;
+
+	/** The namespace patterns shared by all conversions, as the same namespaces are converted in many files. */
+	static final NamespacePatternCache PATTERN_CACHE = new NamespacePatternCache(PATTERN_CACHE_SIZE);
+
+	private final SourceStore sources;
+	private final ConversionCache cache;
+
+	/** The files each file must not import at runtime, as they are only required for JSDoc types in a cycle. */
+	private final SetMultimap<File, File> typeOnlyRequires;
+
+	ConvertingPass(SourceStore sources, ConversionCache cache) {
+		this(sources, cache, ImmutableSetMultimap.of());
+	}
+
+	ConvertingPass(SourceStore sources, ConversionCache cache, SetMultimap<File, File> typeOnlyRequires) {
+		this.sources = sources;
+		this.cache = cache;
+		this.typeOnlyRequires = typeOnlyRequires;
+	}
+
+	void process(ReaderPass readerPass) {
+		process(readerPass, readerPass.providesByFile.keySet());
+	}
+
+	/** Converts only the given files of the graph. */
+	void process(ReaderPass readerPass, Collection<File> files) {
+		for (File file : files) {
 			List<GoogProvideOrModule> provides = new ArrayList<>(readerPass.providesByFile.get(file));
 			boolean isModule = provides.stream().anyMatch(provideOrModule -> provideOrModule.isModule);
-			List<String> shortExports = new ArrayList<>();
-			if (isModule) {
-				GoogProvideOrModule googModule = provides.get(0);
-				if (googModule.fullMatch == null) {
-					// Skip classes that are already in ES6 format
-					continue;
-				}
-				content = convertGoogleModuleFile(googModule, content);
-				shortExports.addAll(googModule.exports.stream().map(e -> e.exportName.internalName).collect(Collectors.toList()));
-			} else {
-				content = convertGoogProvideFile(provides, file, content, shortExports);
+			if (isModule && provides.get(0).fullMatch == null) {
+				// Skip classes that are already in ES6 format
+				continue;
 			}
-			List<GoogRequireOrForwardDeclare> requires = extendRequires(file, readerPass, content);
-			content = replaceRequires(file, content, requires, readerPass.filesByNamespace, shortExports);
-			content = replaceSuppressedExtraRequires(content);
-
-			// Remove namespaces from non officially exported elements
-			List<String> remainingGoogNamespaces = getRemainingGoogNamespaces(content);
-			remainingGoogNamespaces.sort((provide1, provide2) -> provide2.length() - provide1.length());
-			for (String namespace : remainingGoogNamespaces) {
-				content = rewriteFullyQualifiedNamespace(content, Collections.emptySet(), namespace, false);
+			RunReport.measureFile(file, () -> {
+				String content = sources.read(file);
+				String inputKey = ConversionCache.hash(file.getName(), content, getDependencySlice(file, readerPass));
+				sources.write(file, cache.computeIfAbsent(getClass().getSimpleName(), inputKey,
+						() -> convertFile(file, readerPass, content)));
+			});
+		}
+	}
+
+	/**
+	 * Describes everything besides the file itself that influences its conversion, i.e. the relative paths and
+	 * provided namespaces of all files it (implicitly) imports.
+	 */
+	private String getDependencySlice(File file, ReaderPass readerPass) {
+		Set<String> requiredNamespaces = new TreeSet<>(IMPLICITLY_REQUIRED_NAMESPACES);
+		readerPass.requiresByFile.get(file).forEach(require -> requiredNamespaces.add(require.requiredNamespace));
+		StringBuilder slice = new StringBuilder();
+		for (String requiredNamespace : requiredNamespaces) {
+			slice.append(requiredNamespace).append(" ->");
+			File requiredFile = readerPass.filesByNamespace.get(requiredNamespace);
+			if (requiredFile != null && sources.exists(requiredFile)) {
+				slice.append(' ').append(getRequirePathFor(file.getAbsolutePath(), requiredFile.getAbsolutePath()));
+				readerPass.providesByFile.get(requiredFile).forEach(provide -> slice.append(' ').append(provide.namespace));
+				if (typeOnlyRequires.containsEntry(file, requiredFile)) {
+					slice.append(" type-only");
+				}
 			}
+			slice.append('\n');
+		}
+		return slice.toString();
+	}
 
-			content = content.replaceAll("(\\W)COMPILED(\\W)", "$1true$2");
-			content = content.replace("* @define {", "* @type {");
-			content = content.replaceAll("(?m)\\nif \\(goog\\.DEBUG\\) \\{[^\\n]*(\\n+(?!})[^\\n]*)*\\n+}", "");
-			content = content.replaceAll("goog\\.LOCALE(?=\\W)(?!(\\.|\\s*=))", "google.LOCALE");
-			content = content.replaceAll("goog\\.global(?=\\W)", "window");
-			content = content.replaceAll("(?m)^goog\\.tagUnsealableClass", "// $0");
+	String convertFile(File file, ReaderPass readerPass, String content) {
+		List<GoogProvideOrModule> provides = new ArrayList<>(readerPass.providesByFile.get(file));
+		boolean isModule = provides.stream().anyMatch(provideOrModule -> provideOrModule.isModule);
+		List<String> shortExports = new ArrayList<>();
+		if (isModule) {
+			GoogProvideOrModule googModule = provides.get(0);
+			content = convertGoogleModuleFile(googModule, content);
+			shortExports.addAll(googModule.exports.stream().map(e -> e.exportName.internalName).collect(Collectors.toList()));
+		} else {
+			content = convertGoogProvideFile(provides, file, content, shortExports);
+		}
+		List<GoogRequireOrForwardDeclare> requires = extendRequires(file, readerPass, content);
+		content = replaceRequires(file, content, requires, readerPass.filesByNamespace, shortExports);
+		content = replaceSuppressedExtraRequires(content);
+
+		// Remove namespaces from non officially exported elements
+		List<String> remainingGoogNamespaces = getRemainingGoogNamespaces(content);
+		remainingGoogNamespaces.sort((provide1, provide2) -> provide2.length() - provide1.length());
+		for (String namespace : remainingGoogNamespaces) {
+			content = rewriteFullyQualifiedNamespace(content, Collections.emptySet(), namespace, false);
+		}
 
-			// Workaround for https://github.com/google/closure-compiler/issues/3484
-			content = content.replaceAll("import \\* as goog ", "import \\* as google ");
-			content = content.replaceAll("goog(\\.\\w+(?=\\W)(?![.']))", "google$1");
-			content = content.replace("goog.LOCALE.", "google.LOCALE.");
+		content = content.replaceAll("(\\W)COMPILED(\\W)", "$1true$2");
+		content = content.replace("* @define {", "* @type {");
+		content = content.replaceAll("(?m)\\nif \\(goog\\.DEBUG\\) \\{[^\\n]*(\\n+(?!})[^\\n]*)*\\n+}", "");
+		content = content.replaceAll("goog\\.LOCALE(?=\\W)(?!(\\.|\\s*=))", "google.LOCALE");
+		content = content.replaceAll("goog\\.global(?=\\W)", "window");
+		content = content.replaceAll("(?m)^goog\\.tagUnsealableClass", "// $0");
 
+		// Workaround for https://github.com/google/closure-compiler/issues/3484
+		content = content.replaceAll("import \\* as goog ", "import \\* as google ");
+		content = content.replaceAll("goog(\\.\\w+(?=\\W)(?![.']))", "google$1");
+		content = content.replace("goog.LOCALE.", "google.LOCALE.");
 
-			content = content.replaceAll("(?:let|const|var)\\s+([" + JsCodeUtils.IDENTIFIER_PATTERN + "]+)\\s*=\\s*class ", "class $1 ");
-			content = content.replaceAll("(?:let|const|var)\\s+([" + JsCodeUtils.IDENTIFIER_PATTERN + "]+)\\s*=\\s*function\\(", "function $1(");
 
-			content = replaceFunctionDelegations(content);
+		content = content.replaceAll("(?:let|const|var)\\s+([" + JsCodeUtils.IDENTIFIER_PATTERN + "]+)\\s*=\\s*class ", "class $1 ");
+		content = content.replaceAll("(?:let|const|var)\\s+([" + JsCodeUtils.IDENTIFIER_PATTERN + "]+)\\s*=\\s*function\\(", "function $1(");
 
-			content = content.replaceAll("(\\r?\\n){3,}", "\n\n");
-			content = content.replaceAll("(?m)(import.*)\n\nimport", "$1\nimport");
+		content = replaceFunctionDelegations(content);
 
-			Matcher matcher = IMPORT_BLOCK_PATTERN.matcher(content);
-			if (matcher.find()) {
-				String[] imports = matcher.group().split("[\n\r]+");
-				String sortedImports = Arrays.stream(imports).sorted(Comparator.comparing(o -> StringUtils.getLastPart(o, "from "))).collect(Collectors.joining("\n"));
-				content = matcher.replaceFirst(sortedImports + "\n");
-			}
+		content = content.replaceAll("(\\r?\\n){3,}", "\n\n");
+		content = content.replaceAll("(?m)(import.*)\n\nimport", "$1\nimport");
 
-			FileUtils.writeFileContent(file, content);
+		Matcher matcher = IMPORT_BLOCK_PATTERN.matcher(content);
+		if (matcher.find()) {
+			String[] imports = matcher.group().split("[\n\r]+");
+			String sortedImports = Arrays.stream(imports).sorted(Comparator.comparing(o -> StringUtils.getLastPart(o, "from "))).collect(Collectors.joining("\n"));
+			content = matcher.replaceFirst(sortedImports + "\n");
 		}
+
+		return content;
 	}
 
 	private String replaceFunctionDelegations(String content) {
@@ -274,7 +342,7 @@ class ConvertingPass {
 		requires.sort((require1, require2) -> require2.requiredNamespace.length() - require1.requiredNamespace.length());
 		for (GoogRequireOrForwardDeclare require : requires) {
 			File requiredFile = filesByNamespace.get(require.requiredNamespace);
-			if (requiredFile == null || !requiredFile.isFile() || !requiredFile.canRead()) {
+			if (requiredFile == null || !sources.exists(requiredFile)) {
 				if (require.requireType == GoogRequireOrForwardDeclare.ERequireType.IMPLICIT_LENIENT) {
 					continue;
 				}
@@ -293,22 +361,29 @@ class ConvertingPass {
 				continue;
 			}
 
-			if (require.shortReference == null) {
-				require.shortReference = findSafeReferenceForGoogRequire(content, require.requiredNamespace,
+			// The computed reference is not stored in the require, as the reader pass may be converted several times
+			String shortReference = require.shortReference;
+			if (shortReference == null) {
+				shortReference = findSafeReferenceForGoogRequire(content, require.requiredNamespace,
 						Sets.union(usedShortReferencesInFile, RESERVED_KEYWORDS));
-				content = replaceFullyQualifiedCallWith(content, require.requiredNamespace, require.shortReference);
+				content = replaceFullyQualifiedCallWith(content, require.requiredNamespace, shortReference);
 			}
-			usedShortReferencesInFile.add(require.shortReference);
+			usedShortReferencesInFile.add(shortReference);
 
 			String importedElement = StringUtils.getLastPart(require.requiredNamespace, ".");
 
-			if (shouldImportAsModule(require, importedElement)) {
-				content = replaceOrInsert(content, require.fullText, "import * as " + require.shortReference + " from '" + relativePath + "';");
-			} else if (importedElement.equals(require.shortReference)) {
-				content = replaceOrInsert(content, require.fullText, "import {" + require.shortReference + "} from '" + relativePath + "';");
+			if (typeOnlyRequires.containsEntry(file, requiredFile)) {
+				// An import would close a dependency cycle, so the short reference is declared as unknown type for the
+				// JSDoc types. import() types would be more precise, but the Closure compiler cannot parse them.
+				content = replaceOrInsert(content, require.fullText, "/** @typedef {?} */\nlet " + shortReference
+						+ "; // Type of '" + relativePath + "', which is not imported to avoid a cycle");
+			} else if (shouldImportAsModule(require, importedElement)) {
+				content = replaceOrInsert(content, require.fullText, "import * as " + shortReference + " from '" + relativePath + "';");
+			} else if (importedElement.equals(shortReference)) {
+				content = replaceOrInsert(content, require.fullText, "import {" + shortReference + "} from '" + relativePath + "';");
 			} else {
 				content = replaceOrInsert(content,
-						require.fullText, "import {" + importedElement + " as " + require.shortReference + "} from '" + relativePath + "';");
+						require.fullText, "import {" + importedElement + " as " + shortReference + "} from '" + relativePath + "';");
 			}
 		}
 		return content;
@@ -437,19 +512,18 @@ class ConvertingPass {
 			// Typedefs:
 			// foo.bar.MyClass; -> let MyClass;
 			String shortClassName = getShortNameAndAddToExports(exports, namespace, isProvided);
-			content = content.replaceAll("(?m)^" + JsCodeUtils.multilineSafeNamespacePattern(namespace) + ";", "let " + shortClassName + ";");
+			content = PATTERN_CACHE.get(EShape.TYPEDEF_DECLARATION, namespace).matcher(content).replaceAll("let " + shortClassName + ";");
 			return replaceFullyQualifiedCallWith(content, namespace, shortClassName);
 		}
 		if (isProvideForClassOrEnum(namespace, content)) {
 			// Class
 			// foo.bar.MyClass -> MyClass
 			String shortClassName = getShortNameAndAddToExports(exports, namespace, isProvided);
-			content = content.replaceAll("(?m)^" + JsCodeUtils.multilineSafeNamespacePattern(namespace) + " =", "let " + shortClassName + " =");
+			content = PATTERN_CACHE.get(EShape.CLASS_OR_ENUM_DECLARATION, namespace).matcher(content).replaceAll("let " + shortClassName + " =");
 			return replaceFullyQualifiedCallWith(content, namespace, shortClassName);
 		}
 		// Prepare export of non-private methods
-		Pattern methodOrConstantPattern = Pattern
-				.compile("(?m)^" + JsCodeUtils.multilineSafeNamespacePattern(namespace) + "\\s*\\.\\s*([" + JsCodeUtils.IDENTIFIER_PATTERN + "]+)(\\s*=[^=])");
+		Pattern methodOrConstantPattern = PATTERN_CACHE.get(EShape.METHOD_OR_CONSTANT, namespace);
 		Matcher matcher = methodOrConstantPattern.matcher(content);
 		while (matcher.find()) {
 			String methodOrConstantName = matcher.group(1);
@@ -465,8 +539,7 @@ class ConvertingPass {
 					internalMethodOrConstantName);
 		}
 		// Prepare export of exported namespace typedefs e.g. goog.soy -> goog.soy.StrictTemplate
-		Pattern typedefPattern = Pattern
-				.compile("(?m)^" + JsCodeUtils.multilineSafeNamespacePattern(namespace) + "\\s*\\.\\s*([" + JsCodeUtils.IDENTIFIER_PATTERN + "]+);");
+		Pattern typedefPattern = PATTERN_CACHE.get(EShape.MEMBER_TYPEDEF, namespace);
 		matcher = typedefPattern.matcher(content);
 		while (matcher.find()) {
 			String typeName = matcher.group(1);
@@ -499,15 +572,16 @@ class ConvertingPass {
 	}
 
 	private static String replaceFullyQualifiedCallWith(String content, String fullyQualifiedCall, String newCall) {
-		return content.replaceAll("(?<!['\"/" + JsCodeUtils.IDENTIFIER_PATTERN + "])" + JsCodeUtils.multilineSafeNamespacePattern(fullyQualifiedCall) + "(?!['\"/" + JsCodeUtils.IDENTIFIER_PATTERN + "])", JsCodeUtils.safeReplaceString(newCall));
+		return PATTERN_CACHE.get(EShape.FULLY_QUALIFIED_REFERENCE, fullyQualifiedCall).matcher(content)
+				.replaceAll(JsCodeUtils.safeReplaceString(newCall));
 	}
 
 	private boolean isProvideForClassOrEnum(String namespace, String content) {
-		return Pattern.compile("(?m)^\\s*" + JsCodeUtils.multilineSafeNamespacePattern(namespace) + "\\s*=\\s*(class|function\\s+)?").matcher(content).find();
+		return PATTERN_CACHE.get(EShape.CLASS_OR_ENUM, namespace).matcher(content).find();
 	}
 
 	private boolean isTypeDef(String namespace, String content) {
-		return Pattern.compile("(?m)^\\s*" + JsCodeUtils.multilineSafeNamespacePattern(namespace) + ";").matcher(content).find();
+		return PATTERN_CACHE.get(EShape.TYPEDEF, namespace).matcher(content).find();
 	}
 
 	private String convertGoogleModuleFile(GoogProvideOrModule moduleOrProvide, String content) {
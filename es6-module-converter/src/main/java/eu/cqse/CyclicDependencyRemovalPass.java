@@ -1,42 +1,243 @@
 package eu.cqse;
 
+import com.google.common.collect.MultimapBuilder;
+import com.google.common.collect.SetMultimap;
+
 import java.io.File;
 import java.io.IOException;
-import java.util.Arrays;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.regex.Matcher;
 import java.util.stream.Collectors;
 
 public class CyclicDependencyRemovalPass {
 
 	private final File googDir;
+	private final SourceStore sources;
+
+	/** All files that have been merged, including the files the merged content has been written to. */
+	private final Set<File> mergedFiles = new HashSet<>();
+
+	private final List<List<File>> cycles = new ArrayList<>();
+
+	/** The files of each resolved cycle that another file of the cycle only requires for JSDoc types. */
+	private final SetMultimap<File, File> typeOnlyRequires = MultimapBuilder.treeKeys().treeSetValues().build();
 
-	public CyclicDependencyRemovalPass(File closurePath) throws IOException {
+	/** The files the content of each merged file has been written to. */
+	private final Map<File, File> finalFilesByMergedFile = new HashMap<>();
+
+	public CyclicDependencyRemovalPass(File closurePath, SourceStore sources) throws IOException {
 		googDir = closurePath;
+		this.sources = sources;
 
 		if (!googDir.isDirectory()) {
 			throw new IOException("Input dir not found");
 		}
 	}
 
-	void process() throws IOException {
-		merge("events/eventhandler.js", "events/eventhandler.js", "events/events.js", "events/eventwrapper.js", "events/listenable.js", "events/eventtarget.js", "events/listener.js", "events/listenermap.js");
-		merge("ui/container.js", "ui/container.js", "ui/containerrenderer.js");
-		merge("ui/control.js", "ui/controlrenderer.js", "ui/registry.js", "ui/control.js");
-		merge("ui/menu.js", "ui/menurenderer.js", "ui/menuitem.js", "ui/menu.js");
-		merge("useragent/product.js", "useragent/product.js", "useragent/product_isversion.js");
-		merge("ui/tree/treenode.js", "ui/tree/basenode.js", "ui/tree/treenode.js");
+	/**
+	 * Resolves each cycle of the imports of the given graph of the files in the closure path, as cyclic imports between
+	 * ES6 modules fail at load time. As every require of an existing file becomes an import, this includes the cycles
+	 * closed by lenient requires of JSDoc types. Requires of the cycle that are only needed for JSDoc types are turned into type-only
+	 * requires, which do not import anything at runtime. Only the files that still require each other at runtime are
+	 * merged into a single file.
+	 */
+	void process(ReaderPass graph) {
+		for (List<File> cycle : DependencyGraph.ofImports(graph).getCycles()) {
+			SetMultimap<File, File> runtimeRequires = MultimapBuilder.treeKeys().treeSetValues().build();
+			SetMultimap<File, File> typeOnlyRequiresOfCycle = MultimapBuilder.treeKeys().treeSetValues().build();
+			for (File file : cycle) {
+				String code = getCodeWithoutRequires(graph, file);
+				for (File requiredFile : getRequiredFiles(graph, file, cycle)) {
+					if (isUsedInCode(graph, file, requiredFile, code)) {
+						runtimeRequires.put(file, requiredFile);
+					} else {
+						typeOnlyRequiresOfCycle.put(file, requiredFile);
+					}
+				}
+			}
+			List<List<File>> runtimeCycles = getRuntimeCycles(cycle, runtimeRequires);
+			System.out.println("INFO: Resolving cycle of " + describe(cycle) + " with "
+					+ typeOnlyRequiresOfCycle.size() + " type-only requires and " + runtimeCycles.size()
+					+ " merges");
+			for (List<File> runtimeCycle : runtimeCycles) {
+				mergeIfPossible(graph, runtimeCycle, runtimeRequires);
+			}
+			typeOnlyRequiresOfCycle.forEach((file, requiredFile) -> {
+				if (!getFinalFile(file).equals(getFinalFile(requiredFile))) {
+					typeOnlyRequires.put(getFinalFile(file), getFinalFile(requiredFile));
+				}
+			});
+			cycles.add(cycle);
+		}
+	}
+
+	private void mergeIfPossible(ReaderPass graph, List<File> cycle, SetMultimap<File, File> runtimeRequires) {
+		if (cycle.stream().flatMap(file -> graph.providesByFile.get(file).stream()).anyMatch(provide -> provide.isModule)) {
+			System.out.println("WARN: Cannot merge cycle of " + describe(cycle) + ", as it contains goog.modules");
+			return;
+		}
+		if (hasClashingShortNames(graph, cycle)) {
+			System.out.println("WARN: Cannot merge cycle of " + describe(cycle)
+					+ ", as namespaces of different files end with the same name");
+			return;
+		}
+		List<File> files = sortByRuntimeRequires(cycle, runtimeRequires);
+		File finalFile = files.get(files.size() - 1);
+		System.out.println("INFO: Merging cycle of " + describe(cycle) + " into " + getRelativePath(finalFile));
+		merge(finalFile, files);
+	}
+
+	private String describe(List<File> cycle) {
+		return cycle.size() + " files " + cycle.stream().map(this::getRelativePath).collect(Collectors.joining(", "));
+	}
+
+	/** Returns the files of the given cycle that the given file requires, including lenient JSDoc requires. */
+	private static Set<File> getRequiredFiles(ReaderPass graph, File file, List<File> cycle) {
+		return graph.requiresByFile.get(file).stream().map(require -> graph.filesByNamespace.get(require.requiredNamespace))
+				.filter(requiredFile -> requiredFile != null && !requiredFile.equals(file) && cycle.contains(requiredFile))
+				.collect(Collectors.toCollection(TreeSet::new));
+	}
+
+	/**
+	 * Returns the content of the given file without its requires and without the content of comments and literals,
+	 * so that neither the declarations of short references nor JSDoc types are mistaken for runtime references. The
+	 * interpolations of template literals are kept, as they are evaluated at runtime.
+	 */
+	private String getCodeWithoutRequires(ReaderPass graph, File file) {
+		String content = sources.read(file);
+		for (GoogRequireOrForwardDeclare require : graph.requiresByFile.get(file)) {
+			if (require.fullText != null) {
+				content = content.replace(require.fullText, "");
+			}
+		}
+		StringBuilder code = new StringBuilder(content.length());
+		JsCodeUtils.forEachCodeCharacter(content, (position, c) -> code.append(c));
+		return code.toString();
+	}
+
+	/**
+	 * Returns whether the given code of a file references a namespace of the required file or the short reference
+	 * of a require of it. Namespaces that are only used for JSDoc types, which is typical for forward declarations
+	 * and lenient requires, do not need the required file to be loaded. A goog.require without short reference that
+	 * is not used at all is kept for the side effects of the required file.
+	 */
+	private static boolean isUsedInCode(ReaderPass graph, File file, File requiredFile, String code) {
+		for (GoogProvideOrModule provide : graph.providesByFile.get(requiredFile)) {
+			if (isReferenced(code, provide.namespace)) {
+				return true;
+			}
+		}
+		for (GoogRequireOrForwardDeclare require : graph.requiresByFile.get(file)) {
+			if (!requiredFile.equals(graph.filesByNamespace.get(require.requiredNamespace))) {
+				continue;
+			}
+			if (!require.importedFunctions.isEmpty() || isSideEffectRequire(require)
+					|| require.shortReference != null && isReferenced(code, require.shortReference)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/** Returns whether the given require is an explicit goog.require without short reference, i.e. "goog.require('a.b');". */
+	private static boolean isSideEffectRequire(GoogRequireOrForwardDeclare require) {
+		return require.requireType == GoogRequireOrForwardDeclare.ERequireType.GOOG_REQUIRE
+				&& require.shortReference == null && require.fullText != null
+				&& !require.fullText.contains(".requireType(");
+	}
+
+	private static boolean isReferenced(String code, String name) {
+		return ConvertingPass.PATTERN_CACHE.get(NamespacePatternCache.EShape.CODE_REFERENCE, name).matcher(code).find();
+	}
+
+	/**
+	 * Returns the groups of files of the given cycle that still require each other at runtime, i.e. the minimal sets
+	 * of files that have to be merged. Cycles are small, so mutual reachability is sufficient.
+	 */
+	static List<List<File>> getRuntimeCycles(List<File> cycle, SetMultimap<File, File> runtimeRequires) {
+		Map<File, Set<File>> reachableFiles = new HashMap<>();
+		for (File file : cycle) {
+			Set<File> reachable = new HashSet<>();
+			Deque<File> worklist = new ArrayDeque<>(runtimeRequires.get(file));
+			while (!worklist.isEmpty()) {
+				File requiredFile = worklist.pop();
+				if (reachable.add(requiredFile)) {
+					worklist.addAll(runtimeRequires.get(requiredFile));
+				}
+			}
+			reachableFiles.put(file, reachable);
+		}
+
+		List<List<File>> runtimeCycles = new ArrayList<>();
+		Set<File> assignedFiles = new HashSet<>();
+		for (File file : cycle) {
+			if (assignedFiles.contains(file) || !reachableFiles.get(file).contains(file)) {
+				continue;
+			}
+			List<File> runtimeCycle = cycle.stream().filter(other -> reachableFiles.get(file).contains(other)
+					&& reachableFiles.get(other).contains(file)).collect(Collectors.toList());
+			assignedFiles.addAll(runtimeCycle);
+			runtimeCycles.add(runtimeCycle);
+		}
+		return runtimeCycles;
 	}
 
-	private void merge(String finalName, String... fileNames) throws IOException {
-		List<File> files = Arrays.stream(fileNames).map(f -> new File(googDir, f)).collect(Collectors.toList());
-		String content = files.stream().map(f -> {
-			if (!f.exists()) {
-				System.out.println("Cyclic dependency is not required and therefore skipped in the merge process: " + f.getName());
-				return "";
+	/**
+	 * Returns whether namespaces of different files of the given cycle end with the same name, which would be
+	 * declared twice in the merged file after the conversion to ES6 modules.
+	 */
+	private static boolean hasClashingShortNames(ReaderPass graph, List<File> cycle) {
+		Set<String> shortNames = new HashSet<>();
+		for (File file : cycle) {
+			Set<String> shortNamesOfFile = graph.providesByFile.get(file).stream()
+					.map(provide -> StringUtils.getLastPart(provide.namespace, '.')).collect(Collectors.toSet());
+			for (String shortName : shortNamesOfFile) {
+				if (!shortNames.add(shortName)) {
+					return true;
+				}
 			}
-			return FileUtils.getFileContentSafe(f);
-		}).collect(Collectors.joining("\r\n\r\n"));
+		}
+		return false;
+	}
+
+	/**
+	 * Sorts the given files so that the files they require at runtime come before the files requiring them, as far as
+	 * possible.
+	 */
+	private static List<File> sortByRuntimeRequires(List<File> files, SetMultimap<File, File> runtimeRequires) {
+		Set<File> sortedFiles = new LinkedHashSet<>();
+		Set<File> visitedFiles = new HashSet<>();
+		for (File file : files) {
+			addAfterRequires(file, files, runtimeRequires, visitedFiles, sortedFiles);
+		}
+		return new ArrayList<>(sortedFiles);
+	}
+
+	private static void addAfterRequires(File file, List<File> files, SetMultimap<File, File> runtimeRequires,
+										 Set<File> visitedFiles, Set<File> sortedFiles) {
+		if (!visitedFiles.add(file)) {
+			return;
+		}
+		runtimeRequires.get(file).stream().filter(files::contains)
+				.forEach(requiredFile -> addAfterRequires(requiredFile, files, runtimeRequires, visitedFiles, sortedFiles));
+		sortedFiles.add(file);
+	}
+
+	private String getRelativePath(File file) {
+		return googDir.toPath().relativize(file.toPath()).toString().replace('\\', '/');
+	}
+
+	private void merge(File finalFile, List<File> files) {
+		String content = files.stream().map(sources::read).collect(Collectors.joining("\r\n\r\n"));
 
 		Matcher matcher = ReaderPass.PROVIDE_OR_MODULE_PATTERN.matcher(content);
 		while (matcher.find()) {
@@ -45,8 +246,41 @@ public class CyclicDependencyRemovalPass {
 		}
 
 		for (File file : files) {
-			file.delete();
+			sources.delete(file);
 		}
-		FileUtils.writeFileContent(new File(googDir, finalName), content);
+		sources.write(finalFile, content);
+		mergedFiles.addAll(files);
+		mergedFiles.add(finalFile);
+		files.forEach(file -> finalFilesByMergedFile.put(file, finalFile));
+	}
+
+	/** Returns the resolved cycles. */
+	List<List<File>> getCycles() {
+		return cycles;
+	}
+
+	Set<File> getMergedFiles() {
+		return mergedFiles;
+	}
+
+	/**
+	 * Returns the files that are required only for JSDoc types by the files of their cycle. The converted files must
+	 * not import them at runtime, as the cycle would remain otherwise.
+	 */
+	SetMultimap<File, File> getTypeOnlyRequires() {
+		return typeOnlyRequires;
+	}
+
+	/** Returns the files of all resolved cycles, whose imports depend on the other files of their cycle. */
+	Set<File> getCycleFiles() {
+		Set<File> cycleFiles = new HashSet<>(mergedFiles);
+		cycleFiles.addAll(typeOnlyRequires.keySet());
+		cycleFiles.addAll(typeOnlyRequires.values());
+		return cycleFiles;
+	}
+
+	/** Returns the file the content of the given file has been merged into or the file itself if it was not merged. */
+	File getFinalFile(File file) {
+		return finalFilesByMergedFile.getOrDefault(file, file);
 	}
 }
@@ -0,0 +1,229 @@
+package eu.cqse;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact view of the dependency graph of a {@link ReaderPass}. Each namespace and file is interned once and
+ * represented by an int id, the graph itself is stored in compressed sparse row format, i.e. the requires of all
+ * files are stored in a single array and each file refers to its range of it. Traversals therefore neither hash nor
+ * allocate per edge.
+ * <p>
+ * Namespaces that are required, but not provided by any file, get an id as well, but no file.
+ */
+class DependencyGraph {
+
+	/** Marks namespaces that are not provided by any file. */
+	static final int NO_FILE = -1;
+
+	private final Map<String, Integer> namespaceIds = new HashMap<>();
+	private final List<String> namespaces = new ArrayList<>();
+	private final List<File> files = new ArrayList<>();
+
+	/** The id of the providing file for each namespace id or {@link #NO_FILE}. */
+	private int[] fileOfNamespace;
+
+	/** The id of the file providing the test of each namespace, i.e. the namespace with suffix "Test", or {@link #NO_FILE}. */
+	private int[] testFileOfNamespace;
+
+	/** The requires of file i are stored in {@link #requires} from requireOffsets[i] to requireOffsets[i + 1]. */
+	private int[] requireOffsets;
+
+	/** The ids of the required namespaces of all files. */
+	private int[] requires;
+
+	private DependencyGraph() {
+	}
+
+	/**
+	 * Creates the graph of all files of the given pass, whose namespaces are interned in the order of the pass.
+	 * Lenient requires, i.e. namespaces that are only referenced by JSDoc types, are no edges, so that they are not
+	 * selected.
+	 */
+	static DependencyGraph of(ReaderPass readerPass) {
+		return of(readerPass, false);
+	}
+
+	/**
+	 * Creates the graph of the imports of the converted files, which includes the lenient requires, as each require
+	 * of an existing file becomes an import.
+	 */
+	static DependencyGraph ofImports(ReaderPass readerPass) {
+		return of(readerPass, true);
+	}
+
+	private static DependencyGraph of(ReaderPass readerPass, boolean includeLenientRequires) {
+		DependencyGraph graph = new DependencyGraph();
+		Map<File, Integer> fileIds = new HashMap<>();
+		List<Integer> providingFiles = new ArrayList<>();
+		readerPass.filesByNamespace.forEach((namespace, file) -> {
+			int fileId = fileIds.computeIfAbsent(file, newFile -> {
+				graph.files.add(newFile);
+				return graph.files.size() - 1;
+			});
+			graph.intern(namespace);
+			providingFiles.add(fileId);
+		});
+
+		int[][] requiresOfFile = new int[graph.files.size()][];
+		int requireCount = 0;
+		for (int fileId = 0; fileId < graph.files.size(); fileId++) {
+			requiresOfFile[fileId] = readerPass.requiresByFile.get(graph.files.get(fileId)).stream()
+					.filter(require -> includeLenientRequires
+							|| require.requireType != GoogRequireOrForwardDeclare.ERequireType.IMPLICIT_LENIENT)
+					.mapToInt(require -> graph.intern(require.requiredNamespace)).distinct().toArray();
+			requireCount += requiresOfFile[fileId].length;
+		}
+		graph.requireOffsets = new int[graph.files.size() + 1];
+		graph.requires = new int[requireCount];
+		for (int fileId = 0; fileId < graph.files.size(); fileId++) {
+			int offset = graph.requireOffsets[fileId];
+			System.arraycopy(requiresOfFile[fileId], 0, graph.requires, offset, requiresOfFile[fileId].length);
+			graph.requireOffsets[fileId + 1] = offset + requiresOfFile[fileId].length;
+		}
+
+		graph.fileOfNamespace = new int[graph.namespaces.size()];
+		Arrays.fill(graph.fileOfNamespace, NO_FILE);
+		for (int namespaceId = 0; namespaceId < providingFiles.size(); namespaceId++) {
+			graph.fileOfNamespace[namespaceId] = providingFiles.get(namespaceId);
+		}
+
+		graph.testFileOfNamespace = new int[graph.namespaces.size()];
+		for (int namespaceId = 0; namespaceId < graph.namespaces.size(); namespaceId++) {
+			int testNamespaceId = graph.getNamespaceId(graph.namespaces.get(namespaceId) + "Test");
+			graph.testFileOfNamespace[namespaceId] = testNamespaceId < 0 ? NO_FILE : graph.fileOfNamespace[testNamespaceId];
+		}
+		return graph;
+	}
+
+	private int intern(String namespace) {
+		return namespaceIds.computeIfAbsent(namespace, newNamespace -> {
+			namespaces.add(newNamespace);
+			return namespaces.size() - 1;
+		});
+	}
+
+	/** Returns the id of the given namespace or -1 if it is neither provided nor required. */
+	int getNamespaceId(String namespace) {
+		return namespaceIds.getOrDefault(namespace, -1);
+	}
+
+	String getNamespace(int namespaceId) {
+		return namespaces.get(namespaceId);
+	}
+
+	int getNamespaceCount() {
+		return namespaces.size();
+	}
+
+	/** Returns the id of the file providing the given namespace or {@link #NO_FILE}. */
+	int getFileOfNamespace(int namespaceId) {
+		return fileOfNamespace[namespaceId];
+	}
+
+	/** Returns the id of the file providing the test of the given namespace or {@link #NO_FILE}. */
+	int getTestFileOfNamespace(int namespaceId) {
+		return testFileOfNamespace[namespaceId];
+	}
+
+	File getFile(int fileId) {
+		return files.get(fileId);
+	}
+
+	int getFileCount() {
+		return files.size();
+	}
+
+	/** Returns the index of the first require of the given file, see {@link #getRequire(int)}. */
+	int getRequiresStart(int fileId) {
+		return requireOffsets[fileId];
+	}
+
+	/** Returns the index after the last require of the given file, see {@link #getRequire(int)}. */
+	int getRequiresEnd(int fileId) {
+		return requireOffsets[fileId + 1];
+	}
+
+	/** Returns the id of the required namespace at the given index. */
+	int getRequire(int index) {
+		return requires[index];
+	}
+
+	/**
+	 * Returns the strongly connected components of the file graph that consist of more than one file, i.e. the groups
+	 * of files that (transitively) require each other. Uses Tarjan's algorithm with an explicit stack, so that long
+	 * require chains cannot overflow the call stack. The files of each component and the components are sorted by path.
+	 */
+	List<List<File>> getCycles() {
+		int fileCount = files.size();
+		int[] index = new int[fileCount];
+		Arrays.fill(index, -1);
+		int[] lowLink = new int[fileCount];
+		boolean[] isOnStack = new boolean[fileCount];
+		int[] stack = new int[fileCount];
+		int stackSize = 0;
+		// The files whose requires are currently visited and the index of their next require
+		int[] visitedFiles = new int[fileCount];
+		int[] nextRequires = new int[fileCount];
+		int nextIndex = 0;
+
+		List<List<File>> cycles = new ArrayList<>();
+		for (int root = 0; root < fileCount; root++) {
+			if (index[root] >= 0) {
+				continue;
+			}
+			int depth = 0;
+			visitedFiles[0] = root;
+			nextRequires[0] = requireOffsets[root];
+			index[root] = lowLink[root] = nextIndex++;
+			stack[stackSize++] = root;
+			isOnStack[root] = true;
+			while (depth >= 0) {
+				int fileId = visitedFiles[depth];
+				if (nextRequires[depth] < requireOffsets[fileId + 1]) {
+					int requiredFile = fileOfNamespace[requires[nextRequires[depth]++]];
+					if (requiredFile == NO_FILE || requiredFile == fileId) {
+						continue;
+					}
+					if (index[requiredFile] < 0) {
+						index[requiredFile] = lowLink[requiredFile] = nextIndex++;
+						stack[stackSize++] = requiredFile;
+						isOnStack[requiredFile] = true;
+						depth++;
+						visitedFiles[depth] = requiredFile;
+						nextRequires[depth] = requireOffsets[requiredFile];
+					} else if (isOnStack[requiredFile]) {
+						lowLink[fileId] = Math.min(lowLink[fileId], index[requiredFile]);
+					}
+					continue;
+				}
+
+				if (lowLink[fileId] == index[fileId]) {
+					List<File> component = new ArrayList<>();
+					int member;
+					do {
+						member = stack[--stackSize];
+						isOnStack[member] = false;
+						component.add(files.get(member));
+					} while (member != fileId);
+					if (component.size() > 1) {
+						component.sort(null);
+						cycles.add(component);
+					}
+				}
+				depth--;
+				if (depth >= 0) {
+					int parent = visitedFiles[depth];
+					lowLink[parent] = Math.min(lowLink[parent], lowLink[fileId]);
+				}
+			}
+		}
+		cycles.sort(Comparator.comparing(cycle -> cycle.get(0)));
+		return cycles;
+	}
+}
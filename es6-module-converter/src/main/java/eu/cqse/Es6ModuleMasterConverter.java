@@ -2,32 +2,57 @@ package eu.cqse;
 
 import com.google.common.base.Charsets;
 import com.google.common.base.Preconditions;
-import com.google.javascript.jscomp.CommandLineRunner;
+import com.google.common.cache.CacheStats;
+import com.google.javascript.jscomp.CheckLevel;
+import eu.cqse.es6.ClassContainer;
+import eu.cqse.es6.ClassMember;
+import eu.cqse.es6.Constructor;
 import eu.cqse.es6.Es6ClassConversionPass;
+import eu.cqse.es6.GoogInheritsInfo;
 
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.FileSystems;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static java.lang.String.join;
 import static java.nio.file.FileVisitResult.CONTINUE;
-import static java.util.stream.Collectors.toSet;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
 
 /**
  * HOWTO:
  * - Ensure that the Closure library submodule was checked out with this commit:  https://github.com/cqse/closure-library/tree/minimal_fixes_on_20191111
  * - execute 'cd es6-module-converter && ./gradlew run'
+ * - execute 'cd es6-module-converter && ./gradlew run --args=--watch' to keep the output up to date while editing
+ * - execute 'cd es6-module-converter && ./gradlew run --args="--impact=goog.events.EventTarget --depth=1"' to list the
+ *   input files affected by a change of the given namespaces (comma separated), without converting anything
  */
 public class Es6ModuleMasterConverter {
 
@@ -35,46 +60,155 @@ public class Es6ModuleMasterConverter {
 	private static final File OUTPUT_DIR = new File("../ts-closure-library/lib");
 	private static final File TEMP_DIR = new File("../temp");
 	private static final boolean INCLUDE_TESTS = false;
+
+	/**
+	 * Whether top-level declarations that are not reachable from the required namespaces are removed, see
+	 * {@link TreeShakingPass}. Enabled with the system property "converter.treeShaking". Watch mode does not remove
+	 * declarations from reconverted files.
+	 */
+	private static final boolean TREE_SHAKING = Boolean.getBoolean("converter.treeShaking");
 	private static final File REQUIRED_NAMESPACES = new File("required-namespaces.txt");
 
+	/**
+	 * Contains a required namespaces file per additional profile, e.g. "editor.txt" for the profile "editor". The
+	 * files of all profiles are converted at once and a manifest of the files of each profile is written.
+	 */
+	private static final File PROFILES_DIR = new File("profiles");
+	private static final String DEFAULT_PROFILE = "default";
+	private static final File CACHE_DIR = new File("../converter-cache");
+	private static final boolean USE_CONVERSION_CACHE = true;
+	private static final File READER_INDEX = new File(CACHE_DIR, "reader-index.json");
+	private static final File TYPINGS_DIR = new File("../typings");
+	private static final File TS_BUILD_INFO = new File(TEMP_DIR, ".tsbuildinfo");
+	private static final File RUN_REPORT = new File("build/reports/conversion/run-report.json");
+
+	/** How long to wait for further changes before reconverting in watch mode. */
+	private static final long WATCH_DEBOUNCE_MILLIS = 300;
+
 	public static void main(String[] args) throws IOException, InterruptedException {
-		convert();
-
-		generateTSDeclarationFiles();
-
-		CommandLineRunner.main(new String[]{"-O", "ADVANCED",
-				"--warning_level", "VERBOSE",
-				"--jscomp_error='*'",
-				"--jscomp_off=extraRequire",
-				"--jscomp_off=deprecated",
-				"--jscomp_off=lintChecks",
-				"--jscomp_off=analyzerChecks",
-				"--jscomp_off=strictMissingProperties",
-				"--jscomp_off=strictPrimitiveOperators",
-				"--jscomp_off=messageConventions",
-				"--jscomp_warning=unusedLocalVariables",
-				"--js='" + OUTPUT_DIR + "/**.js'",
-				"--js='!./closure-deps/**.js'",
-				"--js='!**_test.js'",
-				"--js='!**_perf.js'",
-				"--js='!**tester.js'",
-				"--js='!**promise/testsuiteadapter.js'",
-				"--js='!**relativecommontests.js'",
-				"--js='!**osapi/osapi.js'",
-				"--js='!**svgpan/svgpan.js'",
-				"--js='!**alltests.js'",
-				"--js='!**node_modules**.js'",
-				"--js='!**protractor_spec.js'",
-				"--js='!**protractor.conf.js'",
-				"--js='!**browser_capabilities.js'",
-				"--js='!**generate_closure_unit_tests.js'",
-				"--js='!./doc/**.js'",
-				"--js='!**debug_loader_integration_tests/testdata/**'",
-				"--js_output_file=\"compiled.js\""});
+		String impactedNamespaces = getArgument(args, "--impact=");
+		if (impactedNamespaces != null) {
+			String depth = getArgument(args, "--depth=");
+			printImpact(Arrays.asList(impactedNamespaces.split(",")),
+					depth == null ? Integer.MAX_VALUE : Integer.parseInt(depth));
+			return;
+		}
+
+		RunReport report = new RunReport();
+		IncrementalConverter incrementalConverter = convert(report);
+
+		if (Arrays.asList(args).contains("--watch")) {
+			report.writeTo(RUN_REPORT);
+			watch(incrementalConverter);
+			return;
+		}
 
+		report.measure("TypeScriptDeclarations", () -> generateTSDeclarationFiles());
+
+		try {
+			report.measure("ClosureCompilerValidation",
+					() -> validateWithClosureCompiler(incrementalConverter.getSources(), report));
+		} finally {
+			// Also write the report if the validation failed, it contains the diagnostic counts
+			report.writeTo(RUN_REPORT);
+		}
 		System.out.println("\r\n==== Finished ====");
 	}
 
+	/** Returns the value of the argument with the given prefix or null if it is not given. */
+	private static String getArgument(String[] args, String prefix) {
+		return Arrays.stream(args).filter(arg -> arg.startsWith(prefix)).map(arg -> arg.substring(prefix.length()))
+				.findFirst().orElse(null);
+	}
+
+	/** Prints the input files that (transitively) import the given namespaces, up to the given depth. */
+	private static void printImpact(List<String> namespaces, int maxDepth) throws IOException {
+		ReaderPassIndex readerIndex = ReaderPassIndex.load(READER_INDEX);
+		ReaderPass graph = new ReaderPass(new SourceStore(), readerIndex);
+		graph.process(INPUT_DIR);
+		for (String namespace : namespaces) {
+			if (!graph.filesByNamespace.containsKey(namespace)) {
+				System.out.println("WARN: Namespace " + namespace + " is not provided by any file");
+			}
+		}
+		graph.getImporters(namespaces, maxDepth).stream().map(File::getPath).sorted().forEach(System.out::println);
+	}
+
+	/**
+	 * Watches the input directory and reconverts the outputs affected by each change. Falls back to a full
+	 * conversion if a change cannot be applied incrementally, whose run report replaces the previous one. TypeScript
+	 * declarations and the Closure compiler validation are not updated in watch mode.
+	 */
+	private static void watch(IncrementalConverter incrementalConverter) throws IOException, InterruptedException {
+		WatchService watchService = FileSystems.getDefault().newWatchService();
+		registerRecursively(watchService, INPUT_DIR.toPath());
+		System.out.println("INFO: Watching " + INPUT_DIR + " for changes");
+		while (true) {
+			WatchKey key = watchService.take();
+			Set<File> changedFiles = new HashSet<>();
+			boolean needsFullConversion = false;
+			// Collect all events of a burst of changes, e.g. when switching branches
+			while (key != null) {
+				Path dir = (Path) key.watchable();
+				for (WatchEvent<?> event : key.pollEvents()) {
+					if (event.kind() == OVERFLOW) {
+						needsFullConversion = true;
+						continue;
+					}
+					Path changedPath = dir.resolve((Path) event.context());
+					if (Files.isDirectory(changedPath)) {
+						if (event.kind() == ENTRY_CREATE) {
+							registerRecursively(watchService, changedPath);
+						}
+					} else if (changedPath.toString().endsWith(".js")) {
+						changedFiles.add(changedPath.toFile());
+					}
+				}
+				key.reset();
+				key = watchService.poll(WATCH_DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+			}
+
+			long start = System.nanoTime();
+			try {
+				if (needsFullConversion || !incrementalConverter.reconvert(changedFiles)) {
+					System.out.println("INFO: Changes require a full conversion");
+					RunReport report = new RunReport();
+					incrementalConverter = convert(report);
+					report.writeTo(RUN_REPORT);
+				}
+				System.out.println("INFO: Updated output in " + (System.nanoTime() - start) / 1_000_000 + "ms");
+			} catch (RuntimeException e) {
+				e.printStackTrace();
+				System.out.println("WARN: Conversion failed, waiting for further changes");
+			}
+		}
+	}
+
+	private static void registerRecursively(WatchService watchService, Path dir) throws IOException {
+		Files.walkFileTree(dir, new SimpleFileVisitor<>() {
+
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+				dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+				return CONTINUE;
+			}
+		});
+	}
+
+	private static void validateWithClosureCompiler(SourceStore sources, RunReport report) throws IOException {
+		List<ClosureCompilerValidation.Diagnostic> diagnostics = new ClosureCompilerValidation(sources, OUTPUT_DIR)
+				.validate(new File("compiled.js"));
+		diagnostics.sort(ClosureCompilerValidation.DIAGNOSTIC_ORDER);
+		diagnostics.forEach(System.out::println);
+
+		long errorCount = diagnostics.stream().filter(diagnostic -> diagnostic.level == CheckLevel.ERROR).count();
+		report.setCounter("closureCompiler.errors", errorCount);
+		report.setCounter("closureCompiler.warnings", diagnostics.size() - errorCount);
+		if (errorCount > 0) {
+			throw new RuntimeException("Closure compiler reported " + errorCount + " errors");
+		}
+	}
+
 	private static void generateTSDeclarationFiles() throws IOException, InterruptedException {
 		// Remove old .d.ts files
 		Files.walkFileTree(OUTPUT_DIR.toPath(), new SimpleFileVisitor<>() {
@@ -88,21 +222,57 @@ public class Es6ModuleMasterConverter {
 			}
 		});
 
-		Path typings = new File("../typings").toPath();
-		FileUtils.safeDeleteDir(TEMP_DIR.toPath());
-		FileUtils.safeDeleteDir(typings);
-		TEMP_DIR.mkdirs();
-		FileUtils.copyFolder(OUTPUT_DIR.toPath(), TEMP_DIR.toPath());
-
-		new SpecificFixesApplierForDeclaration(TEMP_DIR.toPath()).fixAllInPlace();
+		Path typings = TYPINGS_DIR.toPath();
+		prepareIncrementalBuild(typings);
+		// Only the files changed by the fixes are written to TEMP_DIR, all others are linked to the output
+		new SpecificFixesApplierForDeclaration(OUTPUT_DIR.toPath()).fixAllAsOverlay(TEMP_DIR);
+		deleteStaleDeclarations(typings);
 
 		// Generate .d.ts files in typings
 		runTS();
 
 		new DeclarationFixer(typings).fixAllTo(OUTPUT_DIR);
+	}
 
-//		FileUtils.safeDeleteDir(TEMP_DIR.toPath());
-//		FileUtils.safeDeleteDir(typings);
+	/**
+	 * Clears the sources in TEMP_DIR but keeps the TypeScript build info and the typings of the previous run, so
+	 * that tsc only type checks and emits the modules whose content changed.
+	 */
+	private static void prepareIncrementalBuild(Path typings) throws IOException {
+		Path buildInfo = TS_BUILD_INFO.toPath();
+		if (!typings.toFile().isDirectory()) {
+			// tsc would not emit the declarations of unchanged modules again
+			Files.deleteIfExists(buildInfo);
+		}
+		if (TEMP_DIR.isDirectory()) {
+			try (Stream<Path> children = Files.list(TEMP_DIR.toPath())) {
+				for (Path child : (Iterable<Path>) children::iterator) {
+					if (!child.equals(buildInfo)) {
+						FileUtils.safeDeleteDir(child);
+					}
+				}
+			}
+		}
+		TEMP_DIR.mkdirs();
+	}
+
+	/** Deletes the typings of modules that no longer exist, as tsc does not remove outputs in incremental mode. */
+	private static void deleteStaleDeclarations(Path typings) throws IOException {
+		if (!typings.toFile().isDirectory()) {
+			return;
+		}
+		Files.walkFileTree(typings, new SimpleFileVisitor<>() {
+
+			@Override
+			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+				String relativePath = typings.relativize(file).toString();
+				if (isDeclarationFile(file) && !TEMP_DIR.toPath()
+						.resolve(StringUtils.stripSuffix(relativePath, ".d.ts") + ".js").toFile().isFile()) {
+					file.toFile().delete();
+				}
+				return CONTINUE;
+			}
+		});
 	}
 
 	private static boolean isDeclarationFile(Path f) {
@@ -110,99 +280,215 @@ public class Es6ModuleMasterConverter {
 	}
 
 	public static void runTS() throws IOException, InterruptedException {
-		Runtime rt = Runtime.getRuntime();
-		String[] commands = {"../node_modules/.bin/tsc"};
-		Process proc = rt.exec(commands);
+		Process proc = new ProcessBuilder("../node_modules/.bin/tsc", "--incremental",
+				"--tsBuildInfoFile", TS_BUILD_INFO.getPath()).start();
 
-		BufferedReader stdInput = new BufferedReader(new
-				InputStreamReader(proc.getInputStream()));
-
-		BufferedReader stdError = new BufferedReader(new
-				InputStreamReader(proc.getErrorStream()));
+		// Drain both streams while tsc is running, it blocks as soon as a pipe buffer is full
+		Thread stdOutput = drain(proc.getInputStream(), System.out);
+		Thread stdError = drain(proc.getErrorStream(), System.err);
 
 		int exitCode = proc.waitFor();
-
-		// Read the output from the command
-		System.out.println("Here is the standard output of the command:\n");
-		String s = null;
-		while ((s = stdInput.readLine()) != null) {
-			System.out.println(s);
-		}
-
-		// Read any errors from the attempted command
-		System.out.println("Here is the standard error of the command (if any):\n");
-		while ((s = stdError.readLine()) != null) {
-			System.out.println(s);
-		}
+		stdOutput.join();
+		stdError.join();
 
 		if (exitCode != 0) {
 			throw new RuntimeException("d.ts generation exited with errors.");
 		}
 	}
 
-	private static void convert() throws IOException {
-		Set<String> tsRequiredNamespaces = getTsRequiredNamespaces();
+	/** Copies the lines of the given stream to the given target on a background thread. */
+	private static Thread drain(InputStream stream, PrintStream target) {
+		Thread thread = new Thread(() -> {
+			try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream, Charsets.UTF_8))) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					target.println(line);
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}, "tsc-output");
+		thread.setDaemon(true);
+		thread.start();
+		return thread;
+	}
 
-		ReaderPass readClosureLib = new ReaderPass();
-		readClosureLib.process(INPUT_DIR);
+	private static IncrementalConverter convert(RunReport report) throws IOException, InterruptedException {
+		return convert(report, INPUT_DIR, OUTPUT_DIR, getProfiles(), createConversionCache(),
+				ReaderPassIndex.load(READER_INDEX));
+	}
 
-		SelectionPass selectionPass = new SelectionPass();
-		Set<File> selectedFiles = selectionPass.process(readClosureLib, INCLUDE_TESTS, tsRequiredNamespaces);
-		FileUtils.copyFiles(selectedFiles, INPUT_DIR.toPath(), OUTPUT_DIR.toPath());
-		Files.walkFileTree(OUTPUT_DIR.toPath(), new SimpleFileVisitor<>() {
+	/**
+	 * Converts the files of the given closure library that are required for the namespaces of any of the given
+	 * profiles and writes them to the output directory. The converted files of each profile are listed in a manifest
+	 * next to the output directory.
+	 */
+	static IncrementalConverter convert(RunReport report, File inputDir, File outputDir,
+										Map<String, Set<String>> profiles, ConversionCache cache,
+										ReaderPassIndex readerIndex) throws IOException, InterruptedException {
+		ReaderPass readClosureLib = new ReaderPass(new SourceStore(), readerIndex);
+		report.measure("ReaderPass", () -> readClosureLib.process(inputDir));
+
+		Map<File, Long> profilesByFile = report.measure("SelectionPass",
+				() -> new SelectionPass().process(readClosureLib, INCLUDE_TESTS, new ArrayList<>(profiles.values())));
+		Map<File, File> outputFilesByInput = mapToOutputFiles(profilesByFile.keySet(), inputDir, outputDir);
+		report.measure("CopySelectedFiles", () -> copySelectedFiles(outputFilesByInput, inputDir, outputDir));
+
+		// All following passes work on the same in-memory sources, which are written back once at the end
+		SourceStore sources = new SourceStore();
+		long copiedGeneration = sources.getGeneration();
+
+		report.measure("SpecificFixesApplier", () -> new SpecificFixesApplier(outputDir.toPath(), sources, cache).fixAllInPlace());
+
+		// Only the files that have been changed by the passes above have to be read again
+		ReaderPass fixedGraph = report.measure("ReaderPass (fixed)",
+				() -> readClosureLib.deriveForCopies(sources, copiedGeneration, outputFilesByInput, outputDir));
+		CyclicDependencyRemovalPass cycleRemoval = new CyclicDependencyRemovalPass(outputDir, sources);
+		report.measure("CyclicDependencyRemovalPass", () -> cycleRemoval.process(fixedGraph));
+		report.setCounter("cycles.count", cycleRemoval.getCycles().size());
+		report.setCounter("cycles.files", cycleRemoval.getCycles().stream().mapToInt(List::size).sum());
+		report.setCounter("cycles.mergedFiles", cycleRemoval.getMergedFiles().size());
+		report.setCounter("cycles.typeOnlyRequires", cycleRemoval.getTypeOnlyRequires().size());
+
+		report.measure("Es6ClassConversionPass", () -> new Es6ClassConversionPass(sources, cache).process(outputDir));
+
+		ReaderPass readInPass = report.measure("ReaderPass (converted)", () -> fixedGraph.rederive(outputDir));
+		validateProvideRequires(readInPass);
+		CacheStats patternStatsBefore = ConvertingPass.PATTERN_CACHE.getStats();
+		report.measure("ConvertingPass", () -> new ConvertingPass(sources, cache, cycleRemoval.getTypeOnlyRequires())
+				.process(readInPass));
+		CacheStats patternStats = ConvertingPass.PATTERN_CACHE.getStats().minus(patternStatsBefore);
+		System.out.println("INFO: Pattern cache: " + patternStats.hitCount() + " hits, " + patternStats.missCount()
+				+ " misses");
+		report.setCounter("patternCache.hits", patternStats.hitCount());
+		report.setCounter("patternCache.misses", patternStats.missCount());
+		if (TREE_SHAKING) {
+			report.measure("TreeShakingPass", () -> shakeTree(report, sources, readInPass, profiles));
+		}
 
-			@Override
-			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
-				File dest = new File(file.toFile().getAbsolutePath().replace("third_party/", "").replace("closure/goog/", ""));
-				dest.getParentFile().mkdirs();
-				file.toFile().renameTo(dest);
-				return CONTINUE;
-			}
+		report.measure("Flush", () -> sources.flush());
+		report.measure("ProfileManifests", () -> writeProfileManifests(report, profiles, profilesByFile,
+				outputFilesByInput, cycleRemoval, outputDir));
+		System.out.println("INFO: Conversion cache: " + cache.getHits() + " hits, " + cache.getMisses() + " misses");
+		report.setCounter("conversionCache.hits", cache.getHits());
+		report.setCounter("conversionCache.misses", cache.getMisses());
 
-			@Override
-			public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
-				if (dir.toFile().listFiles().length == 0) {
-					dir.toFile().delete();
-				}
-				return super.postVisitDirectory(dir, exc);
-			}
-		});
+		return new IncrementalConverter(outputDir, sources, cache, readInPass, outputFilesByInput,
+				cycleRemoval.getCycleFiles());
+	}
 
-		Files.copy(INPUT_DIR.toPath().resolve("closure/goog/base.js"), OUTPUT_DIR.toPath().resolve("google.js"));
+	/** Removes the declarations of the converted files that none of the profiles' namespaces depends on. */
+	private static void shakeTree(RunReport report, SourceStore sources, ReaderPass graph,
+								  Map<String, Set<String>> profiles) {
+		Set<File> rootFiles = profiles.values().stream().flatMap(Set::stream).map(graph.filesByNamespace::get)
+				.filter(Objects::nonNull).collect(Collectors.toSet());
+		int removedStatements = new TreeShakingPass(sources).process(graph.providesByFile.keySet(), rootFiles);
+		System.out.println("INFO: Tree shaking removed " + removedStatements + " top-level statements");
+		report.setCounter("treeShaking.removedStatements", removedStatements);
+	}
 
-		new SpecificFixesApplier(OUTPUT_DIR.toPath()).fixAllInPlace();
+	/**
+	 * Writes the paths of the converted files of each profile, relative to the output directory, to
+	 * manifests/&lt;profile&gt;.txt next to the output directory.
+	 */
+	private static void writeProfileManifests(RunReport report, Map<String, Set<String>> profiles,
+											  Map<File, Long> profilesByFile, Map<File, File> outputFilesByInput,
+											  CyclicDependencyRemovalPass cycleRemoval, File outputDir) throws IOException {
+		File manifestDir = new File(outputDir.getAbsoluteFile().getParentFile(), "manifests");
+		FileUtils.safeDeleteDir(manifestDir.toPath());
+		manifestDir.mkdirs();
+		int profile = 0;
+		for (String profileName : profiles.keySet()) {
+			long profileBit = 1L << profile++;
+			List<String> manifest = outputFilesByInput.entrySet().stream()
+					.filter(entry -> (profilesByFile.get(entry.getKey()) & profileBit) != 0)
+					.map(entry -> cycleRemoval.getFinalFile(entry.getValue()))
+					.map(outputFile -> outputDir.toPath().relativize(outputFile.toPath()).toString().replace('\\', '/'))
+					.distinct().sorted().collect(Collectors.toList());
+			FileUtils.writeFileContent(new File(manifestDir, profileName + ".txt"), join("\n", manifest) + "\n");
+			report.setCounter("profiles." + profileName + ".files", manifest.size());
+		}
+	}
+
+	/** Returns the file the given selected input file is copied to. */
+	private static File getOutputFile(File inputFile, File inputDir, File outputDir) {
+		String relativePath = inputDir.toPath().relativize(inputFile.toPath()).toString();
+		return new File(outputDir, relativePath.replace("third_party/", "").replace("closure/goog/", ""));
+	}
+
+	/** Maps each selected input file to its final output file before anything is written. */
+	private static Map<File, File> mapToOutputFiles(Set<File> selectedFiles, File inputDir, File outputDir) {
+		Map<File, File> outputFilesByInput = new HashMap<>();
+		Map<File, File> inputFilesByOutput = new HashMap<>();
+		selectedFiles.stream().sorted().forEach(inputFile -> {
+			File outputFile = getOutputFile(inputFile, inputDir, outputDir);
+			File previousInput = inputFilesByOutput.put(outputFile, inputFile);
+			if (previousInput != null) {
+				System.out.println("WARN: " + previousInput + " and " + inputFile + " are both copied to " + outputFile);
+				outputFilesByInput.remove(previousInput);
+			}
+			outputFilesByInput.put(inputFile, outputFile);
+		});
+		return outputFilesByInput;
+	}
 
-		CyclicDependencyRemovalPass cycleRemoval = new CyclicDependencyRemovalPass(OUTPUT_DIR);
-		cycleRemoval.process();
+	/**
+	 * Writes each selected file exactly once to its output file. The outputs are hard linked to the inputs where
+	 * possible, which is safe as the {@link SourceStore} replaces files instead of writing into them.
+	 */
+	private static void copySelectedFiles(Map<File, File> outputFilesByInput, File inputDir, File outputDir) throws IOException {
+		FileUtils.safeDeleteDir(outputDir.toPath());
+		outputFilesByInput.forEach((input, output) -> FileUtils.linkOrCopy(input.toPath(), output.toPath()));
+		Files.copy(inputDir.toPath().resolve("closure/goog/base.js"), outputDir.toPath().resolve("google.js"));
+	}
 
-		Es6ClassConversionPass es6Conversion = new Es6ClassConversionPass();
-		es6Conversion.process(OUTPUT_DIR);
+	/**
+	 * The cache keys include the byte code of all classes that implement conversion rules, so that changing
+	 * any rule invalidates the affected entries.
+	 */
+	private static ConversionCache createConversionCache() {
+		if (!USE_CONVERSION_CACHE) {
+			return ConversionCache.DISABLED;
+		}
+		return new ConversionCache(CACHE_DIR, FixerBase.class, SpecificFixesApplier.class, JsCodeUtils.class,
+				StringUtils.class, Es6ClassConversionPass.class, ClassContainer.class, ClassMember.class,
+				Constructor.class, GoogInheritsInfo.class, ConvertingPass.class, AliasedElement.class,
+				NamespacePatternCache.class, CyclicDependencyRemovalPass.class);
+	}
 
-		ReaderPass readInPass = new ReaderPass();
-		readInPass.process(OUTPUT_DIR);
-		validateProvideRequires(readInPass);
-		new ConvertingPass().process(readInPass);
+	/** Returns the required namespaces of the default profile and of all profiles in {@link #PROFILES_DIR}. */
+	private static Map<String, Set<String>> getProfiles() throws IOException {
+		Map<String, Set<String>> profiles = new LinkedHashMap<>();
+		profiles.put(DEFAULT_PROFILE, readRequiredNamespaces(REQUIRED_NAMESPACES));
+		File[] profileFiles = PROFILES_DIR.listFiles((dir, name) -> name.endsWith(".txt"));
+		if (profileFiles != null) {
+			Arrays.sort(profileFiles);
+			for (File profileFile : profileFiles) {
+				String profileName = profileFile.getName().replaceFirst("\\.txt$", "");
+				Preconditions.checkArgument(!profiles.containsKey(profileName), "Duplicate profile " + profileName);
+				profiles.put(profileName, readRequiredNamespaces(profileFile));
+			}
+		}
+		Preconditions.checkArgument(profiles.size() <= SelectionPass.MAX_PROFILES,
+				"At most " + SelectionPass.MAX_PROFILES + " profiles are supported");
+		return profiles;
 	}
 
-	private static HashSet<String> getTsRequiredNamespaces() throws IOException {
-		return new HashSet<>(com.google.common.io.Files.asCharSource(REQUIRED_NAMESPACES, Charsets.UTF_8).readLines());
+	private static HashSet<String> readRequiredNamespaces(File requiredNamespacesFile) throws IOException {
+		return new HashSet<>(com.google.common.io.Files.asCharSource(requiredNamespacesFile, Charsets.UTF_8).readLines());
 	}
 
 	private static void validateProvideRequires(ReaderPass pass1) {
 		Preconditions.checkArgument(!pass1.filesByNamespace.keySet().isEmpty(), "No provided namespaces found");
 		Preconditions.checkArgument(!pass1.requiresByFile.keySet().isEmpty(), "No goog.requires found in input files");
 
-		Collection<GoogRequireOrForwardDeclare> requires = pass1.requiresByFile.values();
-		Set<String> allRequires = requires.stream()
-				.filter(r -> r.requireType != GoogRequireOrForwardDeclare.ERequireType.IMPLICIT_LENIENT)
-				.map(require -> require.requiredNamespace).collect(toSet());
-
+		DependencyGraph graph = DependencyGraph.of(pass1);
 		List<String> unmatchedDependencies = new ArrayList<>();
-		allRequires.forEach(requiredNamespace -> {
-			if (!pass1.filesByNamespace.containsKey(requiredNamespace)) {
-				unmatchedDependencies.add(requiredNamespace);
+		for (int namespaceId = 0; namespaceId < graph.getNamespaceCount(); namespaceId++) {
+			if (graph.getFileOfNamespace(namespaceId) == DependencyGraph.NO_FILE) {
+				unmatchedDependencies.add(graph.getNamespace(namespaceId));
 			}
-		});
+		}
 		if (!unmatchedDependencies.isEmpty()) {
 			throw new RuntimeException("Dependencies not found:" + join(", ", unmatchedDependencies));
 		}
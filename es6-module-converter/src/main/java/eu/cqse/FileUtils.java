@@ -8,26 +8,77 @@ import com.google.common.io.MoreFiles;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Consumer;
 
 import static com.google.common.io.RecursiveDeleteOption.ALLOW_INSECURE;
-import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
 
 public class FileUtils {
-	public static void processRelevantJsFiles(Consumer<File> processor, File... inputDirPaths) throws IOException {
+
+	/**
+	 * Number of worker threads used by {@link #processRelevantJsFilesInParallel(SourceStore, Consumer, File...)}.
+	 * Can be overridden with the system property "converter.parallelism".
+	 */
+	public static final int PARALLELISM = Integer.getInteger("converter.parallelism",
+			Runtime.getRuntime().availableProcessors());
+
+	/**
+	 * Calls the processor for each relevant JS file below the given directories concurrently on {@link #PARALLELISM}
+	 * threads. The processor must therefore be thread-safe.
+	 */
+	public static void processRelevantJsFilesInParallel(SourceStore sources, Consumer<File> processor, File... inputDirPaths) throws IOException {
+		processInParallel(collectRelevantJsFiles(sources, inputDirPaths), processor, PARALLELISM);
+	}
+
+	/**
+	 * Calls the processor for each of the given files on a dedicated fork-join pool with the given parallelism.
+	 * Unchecked exceptions thrown by the processor are rethrown in the calling thread.
+	 */
+	public static void processInParallel(List<File> files, Consumer<File> processor, int parallelism) {
+		Consumer<File> measuredProcessor = RunReport.inCurrentReport(
+				file -> RunReport.measureFile(file, () -> processor.accept(file)));
+		if (parallelism <= 1) {
+			files.forEach(measuredProcessor);
+			return;
+		}
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			pool.submit(() -> files.parallelStream().forEach(measuredProcessor)).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new RuntimeException(e.getCause());
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private static List<File> collectRelevantJsFiles(SourceStore sources, File... inputDirPaths) throws IOException {
+		List<File> relevantFiles = new ArrayList<>();
 		for (File inputDir : inputDirPaths) {
 			if (!inputDir.isDirectory()) {
 				throw new IOException("Input dir " + inputDir + " not found!");
 			}
 
-			for (File file : Files.fileTraverser().breadthFirst(inputDir)) {
+			for (File file : sources.listFiles(inputDir)) {
 				if (isRelevantJsFile(file)) {
-					processor.accept(file);
+					relevantFiles.add(file);
 				}
 			}
 		}
+		return relevantFiles;
 	}
 
 	private static boolean isRelevantJsFile(File file) {
@@ -48,35 +99,52 @@ public class FileUtils {
 		}
 	}
 
-	public static void copyFolder(Path src, Path dest) throws IOException {
-		java.nio.file.Files.walk(src).forEach(source -> copy(source, dest.resolve(src.relativize(source))));
-	}
-
-	private static void copy(Path source, Path dest) {
+	/**
+	 * Hard links the given target to the source, so that no content has to be copied. Falls back to copying if the
+	 * file system does not support hard links or both paths are on different file stores. Replaces existing targets.
+	 * <p>
+	 * Linked targets share their content with the source, so they must only be replaced and never be written into.
+	 */
+	public static void linkOrCopy(Path source, Path target) {
 		try {
-			java.nio.file.Files.copy(source, dest, REPLACE_EXISTING);
-		} catch (Exception e) {
-			throw new RuntimeException(e.getMessage(), e);
+			java.nio.file.Files.createDirectories(target.getParent());
+			java.nio.file.Files.deleteIfExists(target);
+			try {
+				java.nio.file.Files.createLink(target, source);
+			} catch (IOException | UnsupportedOperationException e) {
+				transferContent(source, target);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
 		}
 	}
 
-	public static void copyFiles(Set<File> selectedFiles, Path sourceDir, Path destinationDir) throws IOException {
-		safeDeleteDir(destinationDir);
-		for (File selectedFile : selectedFiles) {
-			File destination = destinationDir.resolve(sourceDir.relativize(selectedFile.toPath())).toFile();
-			destination.getParentFile().mkdirs();
-			java.nio.file.Files.copy(selectedFile.toPath(), destination.toPath(), REPLACE_EXISTING);
+	/** Copies the content of the given file with {@link FileChannel#transferTo}, which avoids user space buffers. */
+	private static void transferContent(Path source, Path target) throws IOException {
+		try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+			 FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					 StandardOpenOption.TRUNCATE_EXISTING)) {
+			long size = in.size();
+			long position = 0;
+			while (position < size) {
+				position += in.transferTo(position, size - position, out);
+			}
 		}
 	}
 
 	public static String getFileContentSafe(File jsFile) {
 		try {
-			return Files.asCharSource(jsFile, Charsets.UTF_8).read().replace("\uFEFF", "");
+			return decodeFileContent(Files.toByteArray(jsFile));
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		}
 	}
 
+	/** Decodes the given UTF-8 content of a file and removes byte order marks. */
+	public static String decodeFileContent(byte[] content) {
+		return new String(content, Charsets.UTF_8).replace("\uFEFF", "");
+	}
+
 	public static void writeFileContent(File file, String content) throws IOException {
 		Files.asCharSink(file, Charsets.UTF_8).write(content);
 	}
@@ -2,62 +2,114 @@ package eu.cqse;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.FileVisitResult;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.SimpleFileVisitor;
-import java.nio.file.attribute.BasicFileAttributes;
 import java.util.function.Function;
 import java.util.regex.MatchResult;
 import java.util.regex.Pattern;
 
-import static java.nio.file.FileVisitResult.CONTINUE;
-
 public abstract class FixerBase {
 
 	private final Path folder;
 	protected final String extension;
 
+	/** The sources the fixes are applied to. */
+	private final SourceStore sources;
+
+	/** Whether {@link #sources} is private to this fixer and therefore has to be flushed by it. */
+	private final boolean ownsSources;
+
+	private final ConversionCache cache;
+
 	protected String fileContentSafe;
 	protected Path filePath;
 
+	/** Creates a fixer that directly reads and writes the files on disk. */
 	protected FixerBase(Path folder, String extension) {
+		this(folder, extension, new SourceStore(), true, ConversionCache.DISABLED);
+	}
+
+	/**
+	 * Creates a fixer that operates on the given shared sources, which have to be flushed by the caller.
+	 * Fix results are looked up in and stored to the given cache.
+	 */
+	protected FixerBase(Path folder, String extension, SourceStore sources, ConversionCache cache) {
+		this(folder, extension, sources, false, cache);
+	}
+
+	private FixerBase(Path folder, String extension, SourceStore sources, boolean ownsSources, ConversionCache cache) {
 		this.folder = folder;
 		this.extension = extension;
+		this.sources = sources;
+		this.ownsSources = ownsSources;
+		this.cache = cache;
 	}
 
 	public void fixAllTo(File into) throws IOException {
-		Files.walkFileTree(folder, new SimpleFileVisitor<>() {
-
-			@Override
-			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-				if (file.toFile().getName().endsWith("." + extension)) {
-					File fixedFile = into.toPath().resolve(folder.relativize(file)).toFile();
-					writeFixTo(file, fixedFile);
-				}
-				return CONTINUE;
+		for (File file : sources.listFiles(folder.toFile())) {
+			if (file.getName().endsWith("." + extension)) {
+				File fixedFile = into.toPath().resolve(folder.relativize(file.toPath())).toFile();
+				RunReport.measureFile(file, () -> writeFixTo(file.toPath(), fixedFile));
 			}
-		});
+		}
+		flushIfOwned();
 	}
 
 	public void fixAllInPlace() throws IOException {
-		Files.walkFileTree(folder, new SimpleFileVisitor<>() {
-
-			@Override
-			public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-				if (file.toFile().getName().endsWith("." + extension)) {
-					writeFixTo(file, file.toFile());
-				}
-				return CONTINUE;
+		for (File file : sources.listFiles(folder.toFile())) {
+			if (file.getName().endsWith("." + extension)) {
+				RunReport.measureFile(file, () -> writeFixTo(file.toPath(), file));
 			}
-		});
+		}
+		flushIfOwned();
 	}
 
-	public void writeFixTo(Path filePath, File fixedFile) throws IOException {
-		fileContentSafe = FileUtils.getFileContentSafe(filePath.toFile());
+	/**
+	 * Writes the fixed files to the given folder, but only materializes the files that are actually changed by
+	 * the fixes. All other files are hard linked (or copied if linking is not possible) from the original folder.
+	 */
+	public void fixAllAsOverlay(File into) throws IOException {
+		int materializedFiles = 0;
+		int linkedFiles = 0;
+		for (File file : sources.listFiles(folder.toFile())) {
+			if (!file.getName().endsWith("." + extension)) {
+				continue;
+			}
+			File overlayFile = into.toPath().resolve(folder.relativize(file.toPath())).toFile();
+			String content = sources.read(file);
+			String fixedContent = computeFix(file.toPath(), content);
+			if (fixedContent.equals(content)) {
+				FileUtils.linkOrCopy(file.toPath(), overlayFile.toPath());
+				linkedFiles++;
+			} else {
+				sources.write(overlayFile, fixedContent);
+				materializedFiles++;
+			}
+		}
+		flushIfOwned();
+		System.out.println("INFO: " + getClass().getSimpleName() + " materialized " + materializedFiles
+				+ " files and linked " + linkedFiles + " files");
+	}
+
+	private void flushIfOwned() throws IOException {
+		if (ownsSources) {
+			sources.flush();
+		}
+	}
+
+	public void writeFixTo(Path filePath, File fixedFile) {
+		sources.write(fixedFile, computeFix(filePath, sources.read(filePath.toFile())));
+	}
+
+	private String computeFix(Path filePath, String content) {
 		this.filePath = filePath;
-		fix();
-		FileUtils.writeFileContent(fixedFile, fileContentSafe);
+		// The fixes depend on the file path, so it has to be part of the cache key
+		String inputKey = ConversionCache.hash(folder.relativize(filePath).toString(), content);
+		fileContentSafe = cache.computeIfAbsent(getClass().getSimpleName(), inputKey, () -> {
+			fileContentSafe = content;
+			fix();
+			return fileContentSafe;
+		});
+		return fileContentSafe;
 	}
 
 	protected abstract void fix();
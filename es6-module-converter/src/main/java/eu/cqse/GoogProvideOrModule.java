@@ -10,8 +10,16 @@ class GoogProvideOrModule {
 
 	GoogProvideOrModule(String namespace, boolean isModule, List<GoogModuleExport> exports, String fullMatch) {
 		this.isModule = isModule;
-		this.namespace = namespace;
+		this.namespace = ReaderPass.NAMESPACES.intern(namespace);
 		this.exports = exports;
 		this.fullMatch = fullMatch;
 	}
+
+	/** Returns this provide if its namespace is the shared instance, e.g. if it has not been deserialized, or a copy. */
+	GoogProvideOrModule withInternedNamespace() {
+		if (ReaderPass.NAMESPACES.intern(namespace) == namespace) {
+			return this;
+		}
+		return new GoogProvideOrModule(namespace, isModule, exports, fullMatch);
+	}
 }
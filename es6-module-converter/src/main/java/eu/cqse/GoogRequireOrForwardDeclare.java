@@ -12,7 +12,7 @@ public class GoogRequireOrForwardDeclare {
 	 * => shortReference="GoogIterable"
 	 */
 	@Nullable
-	public String shortReference;
+	public final String shortReference;
 
 	public final List<AliasedElement> importedFunctions;
 
@@ -29,10 +29,18 @@ public class GoogRequireOrForwardDeclare {
 		this.fullText = fullText;
 		this.shortReference = shortReference;
 		this.importedFunctions = importedFunctions;
-		this.requiredNamespace = requiredNamespace;
+		this.requiredNamespace = ReaderPass.NAMESPACES.intern(requiredNamespace);
 		this.requireType = requireType;
 	}
 
+	/** Returns this require if its namespace is the shared instance, e.g. if it has not been deserialized, or a copy. */
+	GoogRequireOrForwardDeclare withInternedNamespace() {
+		if (ReaderPass.NAMESPACES.intern(requiredNamespace) == requiredNamespace) {
+			return this;
+		}
+		return new GoogRequireOrForwardDeclare(fullText, requiredNamespace, shortReference, importedFunctions, requireType);
+	}
+
 	@Override
 	public int hashCode() {
 		return Objects.hash(shortReference, importedFunctions, requiredNamespace);
@@ -0,0 +1,144 @@
+package eu.cqse;
+
+import eu.cqse.es6.Es6ClassConversionPass;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the state of a completed conversion and reconverts only the outputs that are affected by changed input
+ * files, i.e. the changed files themselves and, if their provides or exports changed, the files that directly
+ * import them.
+ */
+class IncrementalConverter {
+
+	private final File outputDir;
+	private final SourceStore sources;
+	private final ConversionCache cache;
+
+	/** The dependency graph of the output files before they have been converted to ES6 modules. */
+	private final ReaderPass graph;
+
+	private final Map<Path, File> outputFilesByInput = new HashMap<>();
+	private final Map<File, File> inputFilesByOutput = new HashMap<>();
+
+	/**
+	 * Output files that are part of a resolved dependency cycle, i.e. that contain the content of several input files
+	 * or whose imports depend on how the cycle has been resolved.
+	 */
+	private final Set<File> cycleFiles;
+
+	IncrementalConverter(File outputDir, SourceStore sources, ConversionCache cache, ReaderPass graph,
+						 Map<File, File> outputFilesByInput, Set<File> cycleFiles) {
+		this.outputDir = outputDir;
+		this.sources = sources;
+		this.cache = cache;
+		this.graph = graph;
+		this.cycleFiles = cycleFiles;
+		outputFilesByInput.forEach((input, output) -> {
+			this.outputFilesByInput.put(keyOf(input), output);
+			this.inputFilesByOutput.put(output, input);
+		});
+	}
+
+	/**
+	 * Reconverts the outputs of the given changed input files and writes them to disk. Input files that are not
+	 * part of the conversion are ignored.
+	 *
+	 * @return false if the change cannot be applied incrementally and a full conversion is necessary, e.g. because a
+	 * converted file has been deleted, is part of a resolved cycle or requires a namespace that is not converted yet.
+	 */
+	boolean reconvert(Set<File> changedInputFiles) throws IOException {
+		List<File> changedOutputs = new ArrayList<>();
+		for (File input : changedInputFiles) {
+			File output = outputFilesByInput.get(keyOf(input));
+			if (output == null) {
+				continue;
+			}
+			if (!input.isFile() || cycleFiles.contains(output)) {
+				return false;
+			}
+			changedOutputs.add(output);
+		}
+		if (changedOutputs.isEmpty()) {
+			return true;
+		}
+
+		Set<String> previousProvides = getProvideSignatures(changedOutputs);
+		Set<String> changedNamespaces = getProvidedNamespaces(changedOutputs);
+		rederive(changedOutputs);
+		if (!allRequiresAreKnown(changedOutputs)) {
+			return false;
+		}
+		changedNamespaces.addAll(getProvidedNamespaces(changedOutputs));
+
+		Set<File> affectedOutputs = new HashSet<>(changedOutputs);
+		if (!previousProvides.equals(getProvideSignatures(changedOutputs))) {
+			// The import statements of the importers depend on the provides and exports of the changed files
+			List<File> importers = getDirectImporters(changedNamespaces, affectedOutputs);
+			if (importers.stream().anyMatch(cycleFiles::contains)) {
+				return false;
+			}
+			rederive(importers);
+			affectedOutputs.addAll(importers);
+		}
+
+		new ConvertingPass(sources, cache).process(graph, affectedOutputs);
+		sources.flush();
+		System.out.println("INFO: Reconverted " + affectedOutputs.stream().map(File::getPath).sorted()
+				.collect(Collectors.joining(", ")));
+		return true;
+	}
+
+	/** Returns the store that holds the converted output files. */
+	SourceStore getSources() {
+		return sources;
+	}
+
+	/** Runs the passes before the {@link ConvertingPass} on the given outputs and updates the graph. */
+	private void rederive(List<File> outputs) {
+		SpecificFixesApplier fixesApplier = new SpecificFixesApplier(outputDir.toPath(), sources, cache);
+		for (File output : outputs) {
+			sources.write(output, FileUtils.getFileContentSafe(inputFilesByOutput.get(output)));
+			fixesApplier.writeFixTo(output.toPath(), output);
+		}
+		new Es6ClassConversionPass(sources, cache).process(outputs);
+		graph.rescan(outputs);
+	}
+
+	private boolean allRequiresAreKnown(List<File> outputs) {
+		return outputs.stream().flatMap(output -> graph.requiresByFile.get(output).stream())
+				.filter(require -> require.requireType != GoogRequireOrForwardDeclare.ERequireType.IMPLICIT_LENIENT)
+				.allMatch(require -> graph.filesByNamespace.containsKey(require.requiredNamespace));
+	}
+
+	private List<File> getDirectImporters(Set<String> namespaces, Set<File> excludedFiles) {
+		return graph.getImporters(namespaces, 1).stream().filter(file -> !excludedFiles.contains(file))
+				.collect(Collectors.toList());
+	}
+
+	private Set<String> getProvidedNamespaces(List<File> outputs) {
+		return outputs.stream().flatMap(output -> graph.providesByFile.get(output).stream())
+				.map(provide -> provide.namespace).collect(Collectors.toSet());
+	}
+
+	/** Describes everything about the provides of the given files that influences the imports of other files. */
+	private Set<String> getProvideSignatures(List<File> outputs) {
+		return outputs.stream().flatMap(output -> graph.providesByFile.get(output).stream())
+				.map(provide -> provide.namespace + (provide.isModule ? " module " : " provide ") + provide.exports
+						.stream().map(export -> export.exportName.toEs6Fragment()).sorted().collect(Collectors.joining(",")))
+				.collect(Collectors.toSet());
+	}
+
+	private static Path keyOf(File file) {
+		return file.toPath().toAbsolutePath().normalize();
+	}
+}
@@ -13,6 +13,9 @@ public class JsCodeUtils {
 
 	static final String IDENTIFIER_PATTERN = "\\w_$";
 
+	/** Characters after which a slash starts a regular expression literal instead of being a division. */
+	private static final String REGEX_PRECEDING_CHARACTERS = "(,=:[!&|?{};+-*%<>~^\n";
+
 	public static String safeReplaceString(String methodOrConstantName) {
 		return Matcher.quoteReplacement(methodOrConstantName);
 	}
@@ -138,4 +141,108 @@ public class JsCodeUtils {
 	private enum EScannerState {
 		TOP_LEVEL, IN_REGEX, IN_REGEX_CHARACTER_GROUP, IN_BLOCK_COMMENT, IN_SINGLE_QUOTED_STRING, IN_DOUBLE_QUOTED_STRING, IN_SINGLE_LINE_COMMENT
 	}
+
+	/** Receives characters of code with their position. */
+	interface CodeCharacterConsumer {
+		void accept(int position, char c);
+	}
+
+	/**
+	 * Calls the consumer for each character of the given content that is code, i.e. outside of comments and
+	 * literals. Of comments and literals, only the first character is passed to the consumer. The interpolations of
+	 * template literals are code, including their braces, e.g. "{ns.Foo}" of "`${ns.Foo}`".
+	 */
+	static void forEachCodeCharacter(String content, CodeCharacterConsumer consumer) {
+		forEachCodeCharacter(content, 0, false, consumer);
+	}
+
+	/**
+	 * Calls the consumer for each character of code from the given position on. Within an interpolation, which starts
+	 * at its opening brace, stops after the matching closing brace.
+	 *
+	 * @return the end of the interpolation or of the content.
+	 */
+	private static int forEachCodeCharacter(String content, int start, boolean isInterpolation,
+											CodeCharacterConsumer consumer) {
+		int position = start;
+		int braceDepth = 0;
+		char lastCodeCharacter = '\n';
+		while (position < content.length()) {
+			char c = content.charAt(position);
+			if (c == '\'' || c == '"') {
+				consumer.accept(position, c);
+				position = skipQuoted(content, position, c);
+			} else if (c == '`') {
+				consumer.accept(position, c);
+				position = skipTemplateLiteral(content, position, consumer);
+			} else if (content.startsWith("//", position)) {
+				consumer.accept(position, c);
+				int end = content.indexOf('\n', position);
+				position = end < 0 ? content.length() : end;
+				continue;
+			} else if (content.startsWith("/*", position)) {
+				consumer.accept(position, c);
+				int end = content.indexOf("*/", position + 2);
+				position = end < 0 ? content.length() : end + 2;
+				continue;
+			} else if (c == '/' && REGEX_PRECEDING_CHARACTERS.indexOf(lastCodeCharacter) >= 0) {
+				position = skipQuoted(content, position, '/');
+			} else {
+				consumer.accept(position, c);
+				position++;
+				if (isInterpolation && c == '{') {
+					braceDepth++;
+				} else if (isInterpolation && c == '}' && --braceDepth == 0) {
+					return position;
+				}
+			}
+			if (!Character.isWhitespace(c) || c == '\n') {
+				lastCodeCharacter = c;
+			}
+		}
+		return content.length();
+	}
+
+	/** Returns the end of the template literal starting at the given position and passes its interpolations on. */
+	private static int skipTemplateLiteral(String content, int start, CodeCharacterConsumer consumer) {
+		int position = start + 1;
+		while (position < content.length()) {
+			char c = content.charAt(position);
+			if (c == '\\') {
+				position += 2;
+			} else if (c == '`') {
+				return position + 1;
+			} else if (content.startsWith("${", position)) {
+				position = forEachCodeCharacter(content, position + 1, true, consumer);
+			} else {
+				position++;
+			}
+		}
+		return content.length();
+	}
+
+	/** Returns the end of the string or regex literal starting at the given position, at the latest the line end. */
+	private static int skipQuoted(String content, int start, char quote) {
+		int position = start + 1;
+		boolean isInCharacterClass = false;
+		while (position < content.length()) {
+			char c = content.charAt(position);
+			if (c == '\\') {
+				position += 2;
+				continue;
+			}
+			if (c == '\n') {
+				return position;
+			}
+			if (quote == '/' && c == '[') {
+				isInCharacterClass = true;
+			} else if (quote == '/' && c == ']') {
+				isInCharacterClass = false;
+			} else if (c == quote && !isInCharacterClass) {
+				return position + 1;
+			}
+			position++;
+		}
+		return content.length();
+	}
 }
@@ -0,0 +1,304 @@
+package eu.cqse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.MatchResult;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Walks a js file once and extracts the provides, requires, exports and JSDoc type references that are needed to
+ * build the dependency graph. In contrast to searching the whole file with each pattern, the scanner knows about
+ * strings, comments and regular expression literals, so that e.g. a goog.require in a comment is not extracted.
+ * <p>
+ * The patterns are only applied at the positions where the construct can start: provides, requires and exports at
+ * line starts in code and type references within comments.
+ */
+class JsSourceScanner {
+
+	static final Pattern PROVIDE_OR_MODULE_PATTERN = Pattern
+			.compile("(?m)^goog\\s*\\.\\s*(?:provide|module)\\s*\\(['\"]([\\w.]+)['\"]\\s*\\)\\s*;?");
+
+	/**
+	 * Matches e.g.:
+	 * goog.require('x.y.z');
+	 * const foo = goog.require('x.y.z')
+	 * const {foo} = goog.require("x.y.z"); <-- match will include the "{}"
+	 * <p>
+	 * Groups(1) = short reference ('foo' or '{foo}' or n/a)
+	 * Groups(2) = required namespace
+	 */
+	static final Pattern REQUIRE_PATTERN = Pattern.compile(
+			"(?m)^(?:(?:const|let|var)\\s+(\\{?[\\w_, :]+}?)\\s*=\\s*)?goog\\s*\\.\\s*(?:require|requireType|forwardDeclare)[\\s\\r\\n]*\\(\\s*['\"]([\\w_.]+)['\"]\\s*\\)\\s*;?");
+
+	static final Pattern DEFAULT_EXPORT_PATTERN = Pattern.compile("(?m)^\\s*exports\\s*=\\s*\\{?(([$\\w_,\\s+:*]|//.*|/\\**[^/]*(?<=\\*)/)+)}?;?");
+	static final Pattern DOTTED_EXPORT = Pattern.compile("(?m)^\\s*exports\\.([\\w_]+)\\s*=");
+
+	/**
+	 * Matches e.g.:
+	 * {?ts.data.Test=}
+	 * {!Listenable$$module$closure$goog$events$eventhandler|null}
+	 * {Element|string|function():Element=}
+	 * {!Array.<ts.data.Test>}
+	 */
+	private static final Pattern TYPE_REFERENCE_PATTERN = Pattern.compile("(?m)(?:param|return|type|extends|typedef|private|protected|public)\\s*\\{([^}]+)}");
+
+	/** Characters after which a slash starts a regular expression literal instead of being a division. */
+	private static final String REGEX_PRECEDING_CHARACTERS = "(,=:[!&|?{};+-*%<>~^\n";
+
+	/** Keywords after which a slash starts a regular expression literal, e.g. "return /a/.test(s)". */
+	private static final Set<String> REGEX_PRECEDING_KEYWORDS = Set.of("return", "typeof", "case", "do", "else",
+			"in", "instanceof", "new", "delete", "void", "throw", "yield", "await");
+
+	/** The extraction results of a single file. */
+	static class ScanResult {
+		final List<MatchResult> providesOrModules = new ArrayList<>();
+		final List<MatchResult> requires = new ArrayList<>();
+		final List<MatchResult> dottedExports = new ArrayList<>();
+		final List<MatchResult> defaultExports = new ArrayList<>();
+
+		/** The content of all type expressions in comments, e.g. "!goog.events.Event" for "@param {!goog.events.Event}". */
+		final List<String> typeReferences = new ArrayList<>();
+	}
+
+	private final String content;
+	private final ScanResult result = new ScanResult();
+
+	private final Matcher provideMatcher;
+	private final Matcher requireMatcher;
+	private final Matcher dottedExportMatcher;
+	private final Matcher defaultExportMatcher;
+	private final Matcher typeReferenceMatcher;
+
+	private JsSourceScanner(String content) {
+		this.content = content;
+		provideMatcher = PROVIDE_OR_MODULE_PATTERN.matcher(content);
+		requireMatcher = REQUIRE_PATTERN.matcher(content);
+		dottedExportMatcher = DOTTED_EXPORT.matcher(content);
+		defaultExportMatcher = DEFAULT_EXPORT_PATTERN.matcher(content);
+		typeReferenceMatcher = TYPE_REFERENCE_PATTERN.matcher(content);
+	}
+
+	static ScanResult scan(String content) {
+		JsSourceScanner scanner = new JsSourceScanner(content);
+		scanner.scan();
+		return scanner.result;
+	}
+
+	private void scan() {
+		int length = content.length();
+		int position = 0;
+		boolean isLineStart = true;
+		// The last character of code that is not whitespace and its position, used to tell regular expressions from
+		// divisions
+		char lastCodeCharacter = '\n';
+		int lastCodePosition = -1;
+		while (position < length) {
+			if (isLineStart) {
+				isLineStart = false;
+				int end = scanLineStart(position);
+				if (end >= 0) {
+					position = end;
+					lastCodeCharacter = ';';
+					continue;
+				}
+			}
+
+			char c = content.charAt(position);
+			switch (c) {
+				case '\n':
+					isLineStart = true;
+					position++;
+					break;
+				case '\'':
+				case '"':
+					position = skipString(position, c);
+					lastCodeCharacter = c;
+					break;
+				case '`':
+					position = skipTemplateLiteral(position);
+					lastCodeCharacter = c;
+					break;
+				case '/':
+					if (position + 1 < length && content.charAt(position + 1) == '/') {
+						position = scanComment(position, indexOfOrEnd("\n", position + 2));
+					} else if (position + 1 < length && content.charAt(position + 1) == '*') {
+						int end = content.indexOf("*/", position + 2);
+						position = scanComment(position, end < 0 ? length : end + 2);
+					} else if (isRegexStart(lastCodeCharacter, lastCodePosition)) {
+						position = skipRegexLiteral(position);
+						lastCodeCharacter = c;
+					} else {
+						position++;
+						lastCodeCharacter = c;
+					}
+					break;
+				default:
+					if (!Character.isWhitespace(c)) {
+						lastCodeCharacter = c;
+						lastCodePosition = position;
+					}
+					position++;
+			}
+		}
+	}
+
+	/**
+	 * Returns whether a slash after the given last code character starts a regular expression literal. If the
+	 * character ends a word, this is the case for keywords but not for identifiers or property names.
+	 */
+	private boolean isRegexStart(char lastCodeCharacter, int lastCodePosition) {
+		if (REGEX_PRECEDING_CHARACTERS.indexOf(lastCodeCharacter) >= 0) {
+			return true;
+		}
+		if (!Character.isJavaIdentifierPart(lastCodeCharacter)) {
+			return false;
+		}
+		int wordStart = lastCodePosition;
+		while (wordStart > 0 && Character.isJavaIdentifierPart(content.charAt(wordStart - 1))) {
+			wordStart--;
+		}
+		if (wordStart > 0 && content.charAt(wordStart - 1) == '.') {
+			return false;
+		}
+		return REGEX_PRECEDING_KEYWORDS.contains(content.substring(wordStart, lastCodePosition + 1));
+	}
+
+	/**
+	 * Extracts a provide, require or export that starts at the given line start.
+	 * <p>
+	 * The patterns may consume the line break after a statement without semicolon, so the returned end excludes
+	 * trailing whitespace and the next line is still scanned. A default export may span several lines, e.g.
+	 * "exports = X\nexports.y = 1;", so scanning continues at the end of its first line.
+	 *
+	 * @return the end of the extracted construct or -1 if there is none.
+	 */
+	private int scanLineStart(int lineStart) {
+		switch (content.charAt(lineStart)) {
+			case 'g':
+				if (lookingAt(provideMatcher, lineStart, result.providesOrModules)) {
+					return trimTrailingWhitespace(lineStart, provideMatcher.end());
+				}
+				// Fall through, as requires without short reference also start with "goog"
+			case 'c':
+			case 'l':
+			case 'v':
+				if (lookingAt(requireMatcher, lineStart, result.requires)) {
+					return trimTrailingWhitespace(lineStart, requireMatcher.end());
+				}
+				return -1;
+			default:
+				// Exports may be indented and, like the pattern, may be preceded by blank lines
+				int position = lineStart;
+				while (position < content.length() && Character.isWhitespace(content.charAt(position))) {
+					position++;
+				}
+				if (!content.startsWith("exports", position)) {
+					return -1;
+				}
+				if (lookingAt(dottedExportMatcher, lineStart, result.dottedExports)) {
+					return trimTrailingWhitespace(lineStart, dottedExportMatcher.end());
+				}
+				if (lookingAt(defaultExportMatcher, lineStart, result.defaultExports)) {
+					return indexOfOrEnd("\n", position);
+				}
+				return -1;
+		}
+	}
+
+	private int trimTrailingWhitespace(int start, int end) {
+		while (end > start && Character.isWhitespace(content.charAt(end - 1))) {
+			end--;
+		}
+		return end;
+	}
+
+	private boolean lookingAt(Matcher matcher, int start, List<MatchResult> matches) {
+		matcher.region(start, content.length());
+		if (!matcher.lookingAt()) {
+			return false;
+		}
+		matches.add(matcher.toMatchResult());
+		return true;
+	}
+
+	/** Extracts the type references of the comment in the given range and returns its end. */
+	private int scanComment(int start, int end) {
+		typeReferenceMatcher.region(start, end);
+		while (typeReferenceMatcher.find()) {
+			result.typeReferences.add(typeReferenceMatcher.group(1));
+		}
+		return end;
+	}
+
+	/** Returns the end of the string starting at the given position. Unterminated strings end at the line end. */
+	private int skipString(int start, char quote) {
+		int position = start + 1;
+		while (position < content.length()) {
+			char c = content.charAt(position);
+			if (c == '\\') {
+				position += 2;
+				continue;
+			}
+			if (c == quote) {
+				return position + 1;
+			}
+			if (c == '\n') {
+				return position;
+			}
+			position++;
+		}
+		return content.length();
+	}
+
+	/** Returns the end of the template literal starting at the given position. */
+	private int skipTemplateLiteral(int start) {
+		int position = start + 1;
+		while (position < content.length()) {
+			char c = content.charAt(position);
+			if (c == '\\') {
+				position += 2;
+				continue;
+			}
+			if (c == '`') {
+				return position + 1;
+			}
+			position++;
+		}
+		return content.length();
+	}
+
+	/** Returns the end of the regular expression literal starting at the given position. */
+	private int skipRegexLiteral(int start) {
+		int position = start + 1;
+		boolean isInCharacterClass = false;
+		while (position < content.length()) {
+			char c = content.charAt(position);
+			if (c == '\\') {
+				position += 2;
+				continue;
+			}
+			if (c == '\n') {
+				return position;
+			}
+			if (c == '[') {
+				isInCharacterClass = true;
+			} else if (c == ']') {
+				isInCharacterClass = false;
+			} else if (c == '/' && !isInCharacterClass) {
+				return position + 1;
+			}
+			position++;
+		}
+		return content.length();
+	}
+
+	private int indexOfOrEnd(String string, int fromIndex) {
+		int index = content.indexOf(string, fromIndex);
+		if (index < 0) {
+			return content.length();
+		}
+		return index;
+	}
+}
@@ -0,0 +1,95 @@
+package eu.cqse;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * Bounded cache for the regular expressions that are built from a namespace. The same namespaces are looked up in
+ * every file that provides, requires or references them, so compiling their patterns once saves most of the
+ * compilation work of the {@link ConvertingPass}. The least recently used patterns are evicted first. Lookups are
+ * thread-safe.
+ */
+class NamespacePatternCache {
+
+	/** The shapes of the patterns, each turning the pattern of a namespace into the full regular expression. */
+	enum EShape {
+		/** A reference to the namespace that is not part of a longer identifier, string or path. */
+		FULLY_QUALIFIED_REFERENCE(namespace -> "(?<!['\"/" + JsCodeUtils.IDENTIFIER_PATTERN + "])" + namespace
+				+ "(?!['\"/" + JsCodeUtils.IDENTIFIER_PATTERN + "])"),
+		/** A reference to the namespace or a name in code, which is neither part of a longer identifier nor a member. */
+		CODE_REFERENCE(namespace -> "(?<![\\w$.])" + namespace + "(?![\\w$])"),
+		/** A class or enum assigned to the namespace, i.e. "foo.bar.MyClass = ...". */
+		CLASS_OR_ENUM(namespace -> "(?m)^\\s*" + namespace + "\\s*=\\s*(class|function\\s+)?"),
+		/** A typedef of the namespace, i.e. "foo.bar.MyType;". */
+		TYPEDEF(namespace -> "(?m)^\\s*" + namespace + ";"),
+		/** The start of the typedef of the namespace, which is replaced by a declaration. */
+		TYPEDEF_DECLARATION(namespace -> "(?m)^" + namespace + ";"),
+		/** The start of the assignment of a class or enum to the namespace, which is replaced by a declaration. */
+		CLASS_OR_ENUM_DECLARATION(namespace -> "(?m)^" + namespace + " ="),
+		/** A method or constant assigned to a member of the namespace, i.e. "foo.bar.method = ...". */
+		METHOD_OR_CONSTANT(namespace -> "(?m)^" + namespace + "\\s*\\.\\s*([" + JsCodeUtils.IDENTIFIER_PATTERN
+				+ "]+)(\\s*=[^=])"),
+		/** A typedef of a member of the namespace, i.e. "foo.bar.MyType;". */
+		MEMBER_TYPEDEF(namespace -> "(?m)^" + namespace + "\\s*\\.\\s*([" + JsCodeUtils.IDENTIFIER_PATTERN + "]+);");
+
+		private final Function<String, String> regexBuilder;
+
+		EShape(Function<String, String> regexBuilder) {
+			this.regexBuilder = regexBuilder;
+		}
+	}
+
+	private final LoadingCache<Key, Pattern> patterns;
+
+	NamespacePatternCache(long maximumSize) {
+		patterns = CacheBuilder.newBuilder().maximumSize(maximumSize).recordStats().build(CacheLoader.from(
+				key -> Pattern.compile(key.shape.regexBuilder.apply(JsCodeUtils.multilineSafeNamespacePattern(key.namespace)))));
+	}
+
+	/**
+	 * Returns the compiled pattern of the given shape for the given namespace. Dots of the namespace may be
+	 * surrounded by whitespace, as in namespaces that are split across lines.
+	 */
+	Pattern get(EShape shape, String namespace) {
+		return patterns.getUnchecked(new Key(shape, namespace));
+	}
+
+	/** Returns the hit and miss statistics since the creation of the cache. */
+	CacheStats getStats() {
+		return patterns.stats();
+	}
+
+	private static final class Key {
+
+		private final EShape shape;
+		private final String namespace;
+
+		private Key(EShape shape, String namespace) {
+			this.shape = shape;
+			this.namespace = namespace;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(shape, namespace);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (o == null || getClass() != o.getClass()) {
+				return false;
+			}
+			Key that = (Key) o;
+			return shape == that.shape && namespace.equals(that.namespace);
+		}
+	}
+}
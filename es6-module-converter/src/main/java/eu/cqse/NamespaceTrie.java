@@ -0,0 +1,99 @@
+package eu.cqse;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.function.Consumer;
+
+/**
+ * Character trie of provided namespaces, which finds the namespaces referenced in JSDoc type expressions without
+ * splitting the expressions into substrings first.
+ */
+class NamespaceTrie {
+
+	/** Type references that denote a member of a provided namespace, which has to be imported instead. */
+	private static final String[][] NAMESPACE_ALIASES = {{"goog.net.XhrLike.OrNative", "goog.net.XhrLike"}};
+
+	private final Node root = new Node();
+
+	/** Creates a trie of the given namespaces. Namespaces without a dot are ignored, as they are no type references. */
+	NamespaceTrie(Collection<String> namespaces) {
+		for (String namespace : namespaces) {
+			if (namespace.indexOf('.') >= 0) {
+				insert(namespace, namespace);
+			}
+		}
+		for (String[] alias : NAMESPACE_ALIASES) {
+			if (namespaces.contains(alias[1])) {
+				insert(alias[0], alias[1]);
+			}
+		}
+	}
+
+	private void insert(String key, String namespace) {
+		Node node = root;
+		for (int i = 0; i < key.length(); i++) {
+			node = node.getOrAddChild(key.charAt(i));
+		}
+		node.namespace = namespace;
+	}
+
+	/**
+	 * Calls the given consumer for each token of the given type expression that is a provided namespace, in the order
+	 * of their occurrence. Tokens consist of identifier characters and dots, e.g. "!Array.<goog.events.Event>"
+	 * contains the tokens "Array." and "goog.events.Event".
+	 */
+	void forEachNamespaceIn(String typeExpression, Consumer<String> consumer) {
+		Node node = root;
+		for (int i = 0; i < typeExpression.length(); i++) {
+			char c = typeExpression.charAt(i);
+			if (isTokenCharacter(c)) {
+				if (node != null) {
+					node = node.getChild(c);
+				}
+				continue;
+			}
+			if (node != null && node.namespace != null) {
+				consumer.accept(node.namespace);
+			}
+			node = root;
+		}
+		if (node != null && node.namespace != null) {
+			consumer.accept(node.namespace);
+		}
+	}
+
+	/** Matches the characters of JsCodeUtils#IDENTIFIER_PATTERN and dots. */
+	private static boolean isTokenCharacter(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' || c == '$'
+				|| c == '.';
+	}
+
+	private static class Node {
+		private char[] keys = new char[0];
+		private Node[] children = new Node[0];
+
+		/** The namespace that ends at this node or null if there is none. */
+		private String namespace;
+
+		private Node getChild(char key) {
+			for (int i = 0; i < keys.length; i++) {
+				if (keys[i] == key) {
+					return children[i];
+				}
+			}
+			return null;
+		}
+
+		private Node getOrAddChild(char key) {
+			Node child = getChild(key);
+			if (child == null) {
+				child = new Node();
+				keys = Arrays.copyOf(keys, keys.length + 1);
+				children = Arrays.copyOf(children, children.length + 1);
+				keys[keys.length - 1] = key;
+				children[children.length - 1] = child;
+			}
+			return child;
+		}
+	}
+}
@@ -1,63 +1,238 @@
 package eu.cqse;
 
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
+import com.google.common.collect.MultimapBuilder;
+import com.google.common.collect.SetMultimap;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.regex.Matcher;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.MatchResult;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
-import static eu.cqse.JsCodeUtils.IDENTIFIER_PATTERN;
-
 public class ReaderPass {
 
-	static final Pattern PROVIDE_OR_MODULE_PATTERN = Pattern
-			.compile("(?m)^goog\\s*\\.\\s*(?:provide|module)\\s*\\(['\"]([\\w.]+)['\"]\\s*\\)\\s*;?");
+	static final Pattern PROVIDE_OR_MODULE_PATTERN = JsSourceScanner.PROVIDE_OR_MODULE_PATTERN;
+
+	/**
+	 * Shared instances of the provided and required namespaces. Each namespace is referenced by the files providing
+	 * and requiring it as well as by the maps of all passes, but only stored once.
+	 */
+	static final Interner<String> NAMESPACES = Interners.newWeakInterner();
+
+	/*
+	 * The files are read concurrently, but added to the graph by a single thread in the order of their paths. As all
+	 * maps keep their insertion order, iterating the graph is deterministic.
+	 */
+
+	final Map<String, File> filesByNamespace = new LinkedHashMap<>();
+
+	final Multimap<File, GoogRequireOrForwardDeclare> requiresByFile = MultimapBuilder.linkedHashKeys().arrayListValues().build();
+	final Multimap<File, GoogProvideOrModule> providesByFile = MultimapBuilder.linkedHashKeys().arrayListValues().build();
 
-	final Map<String, File> filesByNamespace = new HashMap<>();
+	/**
+	 * The JSDoc type expressions of each file. The namespaces referenced in them are added as implicit requires by
+	 * {@link #resolveTypeReferences()} once all provided namespaces are known.
+	 */
+	private final Multimap<File, String> typeReferencesByFile = MultimapBuilder.linkedHashKeys().arrayListValues().build();
 
-	final Multimap<File, GoogRequireOrForwardDeclare> requiresByFile = ArrayListMultimap.create();
-	final Multimap<File, GoogProvideOrModule> providesByFile = ArrayListMultimap.create();
+	/** Reverse index of {@link #requiresByFile}, i.e. the files that (implicitly) require each namespace. */
+	private final SetMultimap<String, File> importersByNamespace = MultimapBuilder.hashKeys().linkedHashSetValues().build();
 
 	public static final String BASE_JS = "base.js";
 	public static final String GOOG_JS = "goog.js";
-	private static final Pattern DEFAULT_EXPORT_PATTERN = Pattern.compile("(?m)^\\s*exports\\s*=\\s*\\{?(([$\\w_,\\s+:*]|//.*|/\\**[^/]*(?<=\\*)/)+)}?;?");
-	private static final Pattern DOTTED_EXPORT = Pattern.compile("(?m)^\\s*exports\\.([\\w_]+)\\s*=");
-	private static final Pattern REQUIRE_PATTERN = Pattern.compile(
-			"(?m)^(?:(?:const|let|var)\\s+(\\{?[\\w_, :]+}?)\\s*=\\s*)?goog\\s*\\.\\s*(?:require|requireType|forwardDeclare)[\\s\\r\\n]*\\(\\s*['\"]([\\w_.]+)['\"]\\s*\\)\\s*;?");
+
+	private static final String TEST_ONLY_MARKER = "goog.setTestOnly();";
+
+	/**
+	 * Files without these markers anywhere in their content cannot provide anything. Like the provide pattern, the
+	 * markers allow whitespace around the dot and before the parenthesis, see
+	 * {@link SourceStore#readIfContainsAnyOf(File, String...)}.
+	 */
+	private static final String PROVIDE_MARKER = "goog . provide (";
+	private static final String MODULE_MARKER = "goog . module (";
+
+	private final SourceStore sources;
+	private final ReaderPassIndex index;
+
+	/** The generation of the sources the graph has been built from. Later changes are not reflected in the graph. */
+	private long sourcesGeneration;
+
+	ReaderPass() {
+		this(new SourceStore());
+	}
+
+	ReaderPass(SourceStore sources) {
+		this(sources, ReaderPassIndex.DISABLED);
+	}
+
+	/**
+	 * Creates a reader pass that reuses the extraction results of unchanged files from the given index. As the index
+	 * is validated against the files on disk, the sources must not contain unflushed changes.
+	 */
+	ReaderPass(SourceStore sources, ReaderPassIndex index) {
+		this.sources = sources;
+		this.index = index;
+	}
 
 	void process(File... inputDirPaths) throws IOException {
-		FileUtils.processRelevantJsFiles(this::processJsFile, inputDirPaths);
+		sourcesGeneration = sources.getGeneration();
+		Map<File, FileContribution> contributions = new ConcurrentHashMap<>();
+		FileUtils.processRelevantJsFilesInParallel(sources, jsFile -> contributions.put(jsFile, readJsFile(jsFile)),
+				inputDirPaths);
+		addFilesToGraph(contributions.values());
+		resolveTypeReferences();
+		index.save();
 	}
 
-	private void processJsFile(File jsFile) {
-		String content = FileUtils.getFileContentSafe(jsFile);
+	/**
+	 * Updates the graph for the given files, which may have been changed, created or deleted since they have been
+	 * read. All other files are kept as they are.
+	 */
+	void rescan(Collection<File> changedFiles) {
+		changedFiles.forEach(this::removeFileFromGraph);
+		Map<File, FileContribution> contributions = new ConcurrentHashMap<>();
+		FileUtils.processInParallel(changedFiles.stream().filter(sources::exists).collect(Collectors.toList()),
+				jsFile -> contributions.put(jsFile, readJsFile(jsFile)), FileUtils.PARALLELISM);
+		addFilesToGraph(contributions.values());
+		// The provided namespaces may have changed, which influences the implicit requires of all files
+		resolveTypeReferences();
+	}
 
-		if (content.contains("goog.setTestOnly();")) {
-			return;
+	/**
+	 * Creates the graph of the given directory, which contains copies of files of this graph that may have been
+	 * changed in the given sources since. Only the changed copies and the files that are no copies are read, the
+	 * graph of all other files is taken over from this graph.
+	 *
+	 * @param copiedGeneration the generation of the given sources at which the copies had the content of the files
+	 *                         of this graph.
+	 * @param copies           maps files of this graph to their copies in the given directory.
+	 */
+	ReaderPass deriveForCopies(SourceStore targetSources, long copiedGeneration, Map<File, File> copies, File dir)
+			throws IOException {
+		ReaderPass derived = new ReaderPass(targetSources);
+		derived.sourcesGeneration = targetSources.getGeneration();
+		Map<Path, File> originalsByCopy = new HashMap<>();
+		copies.forEach((original, copy) -> originalsByCopy.put(copy.toPath().toAbsolutePath().normalize(), original));
+
+		Map<File, FileContribution> contributions = new ConcurrentHashMap<>();
+		FileUtils.processRelevantJsFilesInParallel(targetSources, jsFile -> {
+			File original = originalsByCopy.get(jsFile.toPath().toAbsolutePath().normalize());
+			if (original == null || targetSources.isModifiedSince(jsFile, copiedGeneration)
+					|| !providesByFile.containsKey(original)) {
+				contributions.put(jsFile, derived.readJsFile(jsFile));
+			} else {
+				contributions.put(jsFile, getContribution(original, jsFile));
+			}
+		}, dir);
+		derived.addFilesToGraph(contributions.values());
+		derived.resolveTypeReferences();
+		return derived;
+	}
+
+	/**
+	 * Creates the graph of the given directory again after the sources of this graph have been changed. Only the
+	 * files that have been modified in the sources since this graph has been built are read again.
+	 */
+	ReaderPass rederive(File dir) throws IOException {
+		return deriveForCopies(sources, sourcesGeneration, Maps.toMap(providesByFile.keySet(), file -> file), dir);
+	}
+
+	/** Returns the contribution of the given file of this graph, attributed to the given copy of it. */
+	private FileContribution getContribution(File jsFile, File copy) {
+		// Implicit requires are resolved again by the graph the contribution is added to
+		List<GoogRequireOrForwardDeclare> googRequires = requiresByFile.get(jsFile).stream()
+				.filter(require -> require.requireType != GoogRequireOrForwardDeclare.ERequireType.IMPLICIT_LENIENT)
+				.collect(Collectors.toList());
+		return new FileContribution(copy, false, new ArrayList<>(providesByFile.get(jsFile)), googRequires,
+				new ArrayList<>(typeReferencesByFile.get(jsFile)));
+	}
+
+	private void removeFileFromGraph(File jsFile) {
+		for (GoogProvideOrModule provideOrModule : providesByFile.removeAll(jsFile)) {
+			filesByNamespace.remove(provideOrModule.namespace, jsFile);
+		}
+		removeImporter(jsFile);
+		requiresByFile.removeAll(jsFile);
+		typeReferencesByFile.removeAll(jsFile);
+	}
+
+	/** Reads the given file and adds it to the graph. */
+	void processJsFile(File jsFile) {
+		addFileToGraph(readJsFile(jsFile));
+	}
+
+	/** Extracts the contribution of the given file to the graph. Can be called concurrently. */
+	private FileContribution readJsFile(File jsFile) {
+		ReaderPassIndex.FileEntry indexEntry = index.get(jsFile);
+		if (indexEntry != null) {
+			return new FileContribution(jsFile, indexEntry.isTestOnly,
+					indexEntry.providesOrModules.stream().map(GoogProvideOrModule::withInternedNamespace).collect(Collectors.toList()),
+					indexEntry.requires.stream().map(GoogRequireOrForwardDeclare::withInternedNamespace).collect(Collectors.toList()),
+					indexEntry.typeReferences);
+		}
+
+		String content = sources.readIfContainsAnyOf(jsFile, PROVIDE_MARKER, MODULE_MARKER, TEST_ONLY_MARKER);
+		if (content == null) {
+			// Externs, demos, deps files etc. can neither provide nor require anything, so they are not decoded
+			index.put(jsFile, false, List.of(), List.of(), List.of());
+			return new FileContribution(jsFile, false, List.of(), List.of(), List.of());
 		}
 
-		List<GoogProvideOrModule> providesOrModules = getProvidedNamespaces(content);
-		if (providesOrModules.isEmpty()) {
-			if (!shouldIgnoreMissingProvide(jsFile)) {
-				System.out.println(
-						"INFO: " + jsFile.getAbsolutePath() + " does not seem to goog.provide or goog.module anything");
+		if (content.contains(TEST_ONLY_MARKER)) {
+			index.put(jsFile, true, List.of(), List.of(), List.of());
+			return new FileContribution(jsFile, true, List.of(), List.of(), List.of());
+		}
+
+		JsSourceScanner.ScanResult scanResult = JsSourceScanner.scan(content);
+		List<GoogProvideOrModule> providesOrModules = getProvidedNamespaces(scanResult);
+		List<GoogRequireOrForwardDeclare> googRequires = new ArrayList<>();
+		List<String> typeReferences = new ArrayList<>();
+		if (!providesOrModules.isEmpty()) {
+			googRequires.addAll(parseGoogRequires(scanResult));
+			typeReferences.addAll(scanResult.typeReferences);
+		}
+		index.put(jsFile, false, providesOrModules, googRequires, typeReferences);
+		return new FileContribution(jsFile, false, providesOrModules, googRequires, typeReferences);
+	}
+
+	/** Adds the given contributions in the order of their paths, so that the graph does not depend on thread timing. */
+	private void addFilesToGraph(Collection<FileContribution> contributions) {
+		contributions.stream().sorted(Comparator.comparing(contribution -> contribution.file))
+				.forEach(this::addFileToGraph);
+	}
+
+	private void addFileToGraph(FileContribution contribution) {
+		if (contribution.isTestOnly) {
+			return;
+		}
+		if (contribution.providesOrModules.isEmpty()) {
+			if (!shouldIgnoreMissingProvide(contribution.file)) {
+				System.out.println("INFO: " + contribution.file.getAbsolutePath()
+						+ " does not seem to goog.provide or goog.module anything");
 			}
 			return;
 		}
-
-		List<GoogRequireOrForwardDeclare> googRequires = parseGoogRequires(content);
-		addImplicitTypeOnlyGoogRequires(googRequires, content);
-		insertProvidesAndRequiresForFile(jsFile, providesOrModules, googRequires);
+		insertProvidesAndRequiresForFile(contribution.file, contribution.providesOrModules, contribution.googRequires,
+				contribution.typeReferences);
 	}
 
 	private boolean shouldIgnoreMissingProvide(File jsFile) {
@@ -74,32 +249,34 @@ public class ReaderPass {
 				jsFile.getName().equals("deps.js");
 	}
 
-	private void addImplicitTypeOnlyGoogRequires(List<GoogRequireOrForwardDeclare> googRequires, String content) {
-		Set<String> requires = googRequires.stream().map(r -> r.requiredNamespace).collect(Collectors.toSet());
-		// Matches e.g.:
-		// {?ts.data.Test=}
-		// {!Listenable$$module$closure$goog$events$eventhandler|null}
-		// {Element|string|function():Element=}
-		// {!Array.<ts.data.Test>}
-		Pattern requirePattern = Pattern.compile("(?m)(?:param|return|type|extends|typedef|private|protected|public)\\s*\\{([^}]+)}");
-		Matcher matcher = requirePattern.matcher(content);
-		while (matcher.find()) {
-			String typeDefinition = matcher.group(1);
-			String[] namespaces = typeDefinition.split("[^" + IDENTIFIER_PATTERN + ".]+");
-			for (String namespace : namespaces) {
-				if (namespace.equals("goog.net.XhrLike.OrNative")) {
-					namespace = "goog.net.XhrLike";
-				}
-				if (namespace.contains(".") && !requires.contains(namespace) && !namespace.equals("Array.")) {
-					googRequires.add(new GoogRequireOrForwardDeclare(null, namespace, null, List.of(),
-							GoogRequireOrForwardDeclare.ERequireType.IMPLICIT_LENIENT));
-					requires.add(namespace);
-				}
+	/**
+	 * Adds the provided namespaces that are referenced in JSDoc types of a file, but not required explicitly, as
+	 * lenient requires. Previously resolved implicit requires are replaced.
+	 */
+	private void resolveTypeReferences() {
+		NamespaceTrie providedNamespaces = new NamespaceTrie(filesByNamespace.keySet());
+		for (File jsFile : typeReferencesByFile.keySet()) {
+			Collection<GoogRequireOrForwardDeclare> googRequires = requiresByFile.get(jsFile);
+			removeImporter(jsFile);
+			googRequires.removeIf(require -> require.requireType == GoogRequireOrForwardDeclare.ERequireType.IMPLICIT_LENIENT);
+			Set<String> requires = googRequires.stream().map(r -> r.requiredNamespace).collect(Collectors.toSet());
+			List<GoogRequireOrForwardDeclare> implicitRequires = new ArrayList<>();
+			for (String typeReference : typeReferencesByFile.get(jsFile)) {
+				providedNamespaces.forEachNamespaceIn(typeReference, namespace -> {
+					if (requires.add(namespace)) {
+						implicitRequires.add(new GoogRequireOrForwardDeclare(null, namespace, null, List.of(),
+								GoogRequireOrForwardDeclare.ERequireType.IMPLICIT_LENIENT));
+					}
+				});
 			}
+			googRequires.addAll(implicitRequires);
+			addImporter(jsFile);
 		}
 	}
 
-	private void insertProvidesAndRequiresForFile(File jsFile, List<GoogProvideOrModule> providesOrModules, List<GoogRequireOrForwardDeclare> googRequires) {
+	private void insertProvidesAndRequiresForFile(File jsFile, List<GoogProvideOrModule> providesOrModules,
+												  List<GoogRequireOrForwardDeclare> googRequires,
+												  List<String> typeReferences) {
 		providesByFile.putAll(jsFile, providesOrModules);
 
 		for (GoogProvideOrModule provideOrModule : providesOrModules) {
@@ -110,18 +287,57 @@ public class ReaderPass {
 		}
 
 		requiresByFile.putAll(jsFile, googRequires);
+		addImporter(jsFile);
+		typeReferencesByFile.putAll(jsFile, typeReferences);
+	}
+
+	private void addImporter(File jsFile) {
+		requiresByFile.get(jsFile).forEach(require -> importersByNamespace.put(require.requiredNamespace, jsFile));
+	}
+
+	private void removeImporter(File jsFile) {
+		requiresByFile.get(jsFile).forEach(require -> importersByNamespace.remove(require.requiredNamespace, jsFile));
+	}
+
+	/** Returns the files that directly (implicitly) require the given namespace. */
+	Set<File> getDirectImporters(String namespace) {
+		return Collections.unmodifiableSet(importersByNamespace.get(namespace));
+	}
+
+	/**
+	 * Returns the files that are affected by a change of the given namespaces, i.e. the files that require them
+	 * directly or via at most maxDepth - 1 other files. A depth of 1 only returns the direct importers, use
+	 * {@link Integer#MAX_VALUE} for all transitive importers. The files are ordered by their distance.
+	 */
+	Set<File> getImporters(Collection<String> namespaces, int maxDepth) {
+		Set<File> importers = new LinkedHashSet<>();
+		Set<String> visitedNamespaces = new HashSet<>(namespaces);
+		List<String> frontier = new ArrayList<>(namespaces);
+		for (int depth = 1; depth <= maxDepth && !frontier.isEmpty(); depth++) {
+			List<String> nextFrontier = new ArrayList<>();
+			for (String namespace : frontier) {
+				for (File importer : importersByNamespace.get(namespace)) {
+					if (!importers.add(importer)) {
+						continue;
+					}
+					providesByFile.get(importer).stream().map(provide -> provide.namespace)
+							.filter(visitedNamespaces::add).forEach(nextFrontier::add);
+				}
+			}
+			frontier = nextFrontier;
+		}
+		return importers;
 	}
 
-	private static List<GoogProvideOrModule> getProvidedNamespaces(String fileContent) {
+	private static List<GoogProvideOrModule> getProvidedNamespaces(JsSourceScanner.ScanResult scanResult) {
 		List<GoogProvideOrModule> provides = new ArrayList<>();
-		Matcher matcher = PROVIDE_OR_MODULE_PATTERN.matcher(fileContent);
-		while (matcher.find()) {
-			String fullMatch = matcher.group();
-			String namespace = matcher.group(1);
-			boolean isModule = matcher.group().contains("module(");
+		for (MatchResult match : scanResult.providesOrModules) {
+			String fullMatch = match.group();
+			String namespace = match.group(1);
+			boolean isModule = match.group().contains("module(");
 			List<GoogModuleExport> exports = new ArrayList<>();
 			if (isModule) {
-				exports.addAll(extractExportsOfGoogModule(fileContent, namespace));
+				exports.addAll(extractExportsOfGoogModule(scanResult, namespace));
 				if (exports.isEmpty()) {
 					throw new RuntimeException(
 							"Namespace '" + namespace + "' is provided as goog.module, but not exports were found");
@@ -134,17 +350,19 @@ public class ReaderPass {
 
 	@VisibleForTesting
 	static List<GoogModuleExport> extractExportsOfGoogModule(String fileContent, String module) {
+		return extractExportsOfGoogModule(JsSourceScanner.scan(fileContent), module);
+	}
+
+	private static List<GoogModuleExport> extractExportsOfGoogModule(JsSourceScanner.ScanResult scanResult, String module) {
 		List<GoogModuleExport> googExports = new ArrayList<>();
-		Matcher dottedExportMatcher = DOTTED_EXPORT.matcher(fileContent);
-		while (dottedExportMatcher.find()) {
-			String identifier = dottedExportMatcher.group(1).trim();
-			googExports.add(new GoogModuleExport(new AliasedElement(identifier, identifier), true, dottedExportMatcher.group()));
-		}
-		Matcher defaultExportMatcher = DEFAULT_EXPORT_PATTERN.matcher(fileContent);
-		while (defaultExportMatcher.find()) {
-			String rawContent = defaultExportMatcher.group(1).replaceAll("/\\**[^/]*(?<=\\*)/", "").replaceAll("//.*", "");
+		for (MatchResult dottedExport : scanResult.dottedExports) {
+			String identifier = dottedExport.group(1).trim();
+			googExports.add(new GoogModuleExport(new AliasedElement(identifier, identifier), true, dottedExport.group()));
+		}
+		for (MatchResult defaultExport : scanResult.defaultExports) {
+			String rawContent = defaultExport.group(1).replaceAll("/\\**[^/]*(?<=\\*)/", "").replaceAll("//.*", "");
 			List<AliasedElement> exportedNames = new ArrayList<>();
-			if (!defaultExportMatcher.group(0).contains("{")) {
+			if (!defaultExport.group(0).contains("{")) {
 				exportedNames.add(new AliasedElement(StringUtils.getLastPart(module, '.'), rawContent.trim()));
 			} else if (rawContent.contains(",")) {
 				exportedNames.addAll(Arrays.stream(rawContent.split(",")).filter(e -> !e.isBlank())
@@ -152,7 +370,7 @@ public class ReaderPass {
 			} else {
 				exportedNames.add(normalizeExportEntry(rawContent));
 			}
-			exportedNames.forEach(exportedName -> googExports.add(new GoogModuleExport(exportedName, false, defaultExportMatcher.group())));
+			exportedNames.forEach(exportedName -> googExports.add(new GoogModuleExport(exportedName, false, defaultExport.group())));
 		}
 		return googExports;
 	}
@@ -165,21 +383,12 @@ public class ReaderPass {
 		return new AliasedElement(split[0].trim(), split[1].trim());
 	}
 
-	private static List<GoogRequireOrForwardDeclare> parseGoogRequires(String content) {
+	private static List<GoogRequireOrForwardDeclare> parseGoogRequires(JsSourceScanner.ScanResult scanResult) {
 		List<GoogRequireOrForwardDeclare> requires = new ArrayList<>();
-		// Matches e.g.:
-		// goog.require('x.y.z');
-		// }
-		// const foo = goog.require('x.y.z')
-		// const {foo} = goog.require("x.y.z"); <-- match will include the "{}"
-		//
-		// Groups(1) = short reference ('foo' or '{foo}' or n/a)
-		// Groups(2) = required namespace
-		Matcher matcher = REQUIRE_PATTERN.matcher(content);
-		while (matcher.find()) {
-			String requiredNamespace = matcher.group(2);
-			String fullText = matcher.group();
-			String rawShortReference = matcher.group(1);
+		for (MatchResult match : scanResult.requires) {
+			String requiredNamespace = match.group(2);
+			String fullText = match.group();
+			String rawShortReference = match.group(1);
 			String shortReference = null;
 			List<AliasedElement> importedFunctions = new ArrayList<>();
 			if (rawShortReference != null && rawShortReference.contains("{")) {
@@ -208,4 +417,22 @@ public class ReaderPass {
 
 		return requires;
 	}
+
+	/** The provides, requires and type references that a single file contributes to the graph. */
+	private static class FileContribution {
+		private final File file;
+		private final boolean isTestOnly;
+		private final List<GoogProvideOrModule> providesOrModules;
+		private final List<GoogRequireOrForwardDeclare> googRequires;
+		private final List<String> typeReferences;
+
+		private FileContribution(File file, boolean isTestOnly, List<GoogProvideOrModule> providesOrModules,
+								 List<GoogRequireOrForwardDeclare> googRequires, List<String> typeReferences) {
+			this.file = file;
+			this.isTestOnly = isTestOnly;
+			this.providesOrModules = providesOrModules;
+			this.googRequires = googRequires;
+			this.typeReferences = typeReferences;
+		}
+	}
 }
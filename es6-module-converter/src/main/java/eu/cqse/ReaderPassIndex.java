@@ -0,0 +1,139 @@
+package eu.cqse;
+
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.Moshi;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Persistent index of the provides, requires and exports that {@link ReaderPass} extracted from each file.
+ * <p>
+ * An entry is reused as long as the modification time and size of its file are unchanged, so that only changed
+ * files have to be scanned again. The index is invalidated as a whole when the byte code of the extraction logic
+ * changes. Lookups and updates are thread-safe.
+ */
+class ReaderPassIndex {
+
+	/** An index that never contains any entries and is not persisted. */
+	static final ReaderPassIndex DISABLED = new ReaderPassIndex(null);
+
+	private static final JsonAdapter<IndexData> ADAPTER = new Moshi.Builder().build().adapter(IndexData.class);
+
+	private final File indexFile;
+	private final Map<String, FileEntry> entries = new ConcurrentHashMap<>();
+
+	/** The paths of the files that have been looked up or stored since loading. Only these are saved again. */
+	private final Set<String> usedPaths = ConcurrentHashMap.newKeySet();
+
+	private final AtomicInteger reusedEntries = new AtomicInteger();
+
+	private ReaderPassIndex(File indexFile) {
+		this.indexFile = indexFile;
+	}
+
+	/** Loads the index from the given file. Returns an empty index if it does not exist or is outdated. */
+	static ReaderPassIndex load(File indexFile) throws IOException {
+		ReaderPassIndex index = new ReaderPassIndex(indexFile);
+		if (!indexFile.isFile()) {
+			return index;
+		}
+		IndexData data = ADAPTER.fromJson(FileUtils.getFileContentSafe(indexFile));
+		if (data == null || !getExtractorVersion().equals(data.extractorVersion)) {
+			System.out.println("INFO: Discarding outdated reader index " + indexFile.getPath());
+			return index;
+		}
+		for (FileEntry entry : data.files) {
+			index.entries.put(entry.path, entry);
+		}
+		return index;
+	}
+
+	/** Returns the entry for the given file or null if there is none or the file has changed since. */
+	FileEntry get(File file) {
+		String path = keyOf(file);
+		usedPaths.add(path);
+		FileEntry entry = entries.get(path);
+		if (entry == null || entry.lastModified != file.lastModified() || entry.length != file.length()) {
+			return null;
+		}
+		reusedEntries.incrementAndGet();
+		return entry;
+	}
+
+	/** Stores the extraction results of the given file. */
+	void put(File file, boolean isTestOnly, List<GoogProvideOrModule> providesOrModules,
+			 List<GoogRequireOrForwardDeclare> requires, List<String> typeReferences) {
+		if (indexFile == null) {
+			return;
+		}
+		FileEntry entry = new FileEntry();
+		entry.path = keyOf(file);
+		entry.lastModified = file.lastModified();
+		entry.length = file.length();
+		entry.isTestOnly = isTestOnly;
+		entry.providesOrModules = providesOrModules;
+		entry.requires = requires;
+		entry.typeReferences = typeReferences;
+		entries.put(entry.path, entry);
+		usedPaths.add(entry.path);
+	}
+
+	/** Writes the index to disk, dropping the entries of all files that have not been used since loading. */
+	void save() throws IOException {
+		if (indexFile == null) {
+			return;
+		}
+		IndexData data = new IndexData();
+		data.extractorVersion = getExtractorVersion();
+		data.files = new ArrayList<>();
+		for (String path : usedPaths) {
+			FileEntry entry = entries.get(path);
+			if (entry != null) {
+				data.files.add(entry);
+			}
+		}
+		data.files.sort(Comparator.comparing(entry -> entry.path));
+		indexFile.getAbsoluteFile().getParentFile().mkdirs();
+		FileUtils.writeFileContent(indexFile, ADAPTER.toJson(data));
+		System.out.println("INFO: Reader index reused " + reusedEntries.get() + " of " + data.files.size() + " entries");
+	}
+
+	private static String keyOf(File file) {
+		return file.toPath().toAbsolutePath().normalize().toString();
+	}
+
+	private static String getExtractorVersion() {
+		return ConversionCache.hashByteCode(ReaderPass.class, JsSourceScanner.class, NamespaceTrie.class,
+				GoogProvideOrModule.class, GoogModuleExport.class, GoogRequireOrForwardDeclare.class, AliasedElement.class);
+	}
+
+	/** The extraction results of a single file. */
+	static class FileEntry {
+		String path;
+		long lastModified;
+		long length;
+
+		/** Whether the file is marked with goog.setTestOnly() and has therefore not been scanned further. */
+		boolean isTestOnly;
+
+		List<GoogProvideOrModule> providesOrModules;
+		List<GoogRequireOrForwardDeclare> requires;
+
+		/** The JSDoc type expressions, which are resolved to implicit requires after all files have been read. */
+		List<String> typeReferences;
+	}
+
+	/** The serialized form of the index. */
+	private static class IndexData {
+		String extractorVersion;
+		List<FileEntry> files;
+	}
+}
@@ -0,0 +1,281 @@
+package eu.cqse;
+
+import com.google.common.base.Utf8;
+import com.squareup.moshi.Moshi;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Collects wall time, CPU time, allocated bytes, peak heap usage and processed bytes of the individual passes of a conversion run
+ * (and of each file within a pass) and writes them as JSON report, so that performance regressions can be tracked.
+ * <p>
+ * Only one pass of a report can be measured at a time. Code that processes files calls
+ * {@link #measureFile(File, Runnable)} and {@link #recordBytesIn(CharSequence)}/{@link #recordBytesOut(CharSequence)},
+ * which are attributed to the pass that is currently measured by the report of the calling thread and are no-ops if
+ * there is none. Worker threads take part in the report of the thread that started them via
+ * {@link #inCurrentReport(Consumer)}, so several reports can be recorded concurrently.
+ */
+public class RunReport {
+
+	private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+	/** The report whose pass the code running on this thread belongs to or null if there is none. */
+	private static final ThreadLocal<RunReport> CURRENT_REPORT = new ThreadLocal<>();
+
+	/** The file that is currently processed by this thread or null if there is none. */
+	private static final ThreadLocal<FileReport> CURRENT_FILE = new ThreadLocal<>();
+
+	public final String startedAt = Instant.now().toString();
+	public long wallMillis;
+	public final List<PassReport> passes = new ArrayList<>();
+
+	/** Additional named counters, e.g. cache statistics. */
+	public final Map<String, Long> counters = new TreeMap<>();
+
+	private final transient long startNanos = System.nanoTime();
+
+	/** The pass that is currently measured or null if there is none. */
+	private transient volatile PassReport currentPass;
+
+	/** A pass that may throw the exceptions of the conversion passes. */
+	public interface PassAction {
+		void run() throws IOException, InterruptedException;
+	}
+
+	/** A pass that computes a result and may throw the exceptions of the conversion passes. */
+	public interface PassSupplier<T> {
+		T get() throws IOException, InterruptedException;
+	}
+
+	/** Runs and measures the given pass. */
+	public void measure(String passName, PassAction action) throws IOException, InterruptedException {
+		measure(passName, () -> {
+			action.run();
+			return null;
+		});
+	}
+
+	/** Runs and measures the given pass and returns its result. */
+	public <T> T measure(String passName, PassSupplier<T> action) throws IOException, InterruptedException {
+		PassReport pass = new PassReport(passName);
+		passes.add(pass);
+		currentPass = pass;
+		RunReport previousReport = CURRENT_REPORT.get();
+		CURRENT_REPORT.set(this);
+		long wallStart = System.nanoTime();
+		long cpuStart = getCurrentThreadCpuTime();
+		long allocationStart = getCurrentThreadAllocatedBytes();
+		resetPeakHeapUsage();
+		try {
+			return action.get();
+		} finally {
+			currentPass = null;
+			CURRENT_REPORT.set(previousReport);
+			pass.peakHeapBytes = getPeakHeapUsage();
+			pass.complete(System.nanoTime() - wallStart, getCurrentThreadCpuTime() - cpuStart,
+					getCurrentThreadAllocatedBytes() - allocationStart);
+		}
+	}
+
+	public void setCounter(String name, long value) {
+		counters.put(name, value);
+	}
+
+	/** Writes the report as JSON to the given file. */
+	public void writeTo(File file) throws IOException {
+		wallMillis = (System.nanoTime() - startNanos) / 1_000_000;
+		file.getAbsoluteFile().getParentFile().mkdirs();
+		String json = new Moshi.Builder().build().adapter(RunReport.class).indent("  ").toJson(this);
+		FileUtils.writeFileContent(file, json);
+		System.out.println("INFO: Wrote run report to " + file.getPath());
+	}
+
+	/**
+	 * Returns a consumer that runs the given consumer as part of the report of the calling thread, for passing work
+	 * on to other threads.
+	 */
+	public static <T> Consumer<T> inCurrentReport(Consumer<T> consumer) {
+		RunReport report = CURRENT_REPORT.get();
+		return value -> {
+			RunReport previousReport = CURRENT_REPORT.get();
+			CURRENT_REPORT.set(report);
+			try {
+				consumer.accept(value);
+			} finally {
+				CURRENT_REPORT.set(previousReport);
+			}
+		};
+	}
+
+	/** Returns the pass that is currently measured by the report of the calling thread or null if there is none. */
+	private static PassReport getCurrentPass() {
+		RunReport report = CURRENT_REPORT.get();
+		return report == null ? null : report.currentPass;
+	}
+
+	/** Runs the given action for the given file and attributes its costs to the file in the current pass. */
+	public static void measureFile(File file, Runnable action) {
+		PassReport pass = getCurrentPass();
+		if (pass == null) {
+			action.run();
+			return;
+		}
+		FileReport fileReport = new FileReport(file.getPath());
+		CURRENT_FILE.set(fileReport);
+		long wallStart = System.nanoTime();
+		long cpuStart = getCurrentThreadCpuTime();
+		long allocationStart = getCurrentThreadAllocatedBytes();
+		try {
+			action.run();
+		} finally {
+			CURRENT_FILE.remove();
+			fileReport.wallMillis = toMillis(System.nanoTime() - wallStart);
+			long cpuTime = getCurrentThreadCpuTime() - cpuStart;
+			long allocatedBytes = getCurrentThreadAllocatedBytes() - allocationStart;
+			fileReport.cpuMillis = toMillis(cpuTime);
+			fileReport.allocatedBytes = allocatedBytes;
+			pass.addFile(fileReport, cpuTime, allocatedBytes);
+		}
+	}
+
+	/** Records that the given content has been read by the current pass. */
+	public static void recordBytesIn(CharSequence content) {
+		PassReport pass = getCurrentPass();
+		if (pass == null) {
+			return;
+		}
+		long bytes = Utf8.encodedLength(content);
+		pass.bytesInCounter.addAndGet(bytes);
+		FileReport fileReport = CURRENT_FILE.get();
+		if (fileReport != null) {
+			fileReport.bytesIn += bytes;
+		}
+	}
+
+	/** Records that the given content has been written by the current pass. */
+	public static void recordBytesOut(CharSequence content) {
+		PassReport pass = getCurrentPass();
+		if (pass == null) {
+			return;
+		}
+		long bytes = Utf8.encodedLength(content);
+		pass.bytesOutCounter.addAndGet(bytes);
+		FileReport fileReport = CURRENT_FILE.get();
+		if (fileReport != null) {
+			fileReport.bytesOut += bytes;
+		}
+	}
+
+	private static long getCurrentThreadCpuTime() {
+		if (!THREAD_MX_BEAN.isCurrentThreadCpuTimeSupported()) {
+			return 0;
+		}
+		return THREAD_MX_BEAN.getCurrentThreadCpuTime();
+	}
+
+	private static long getCurrentThreadAllocatedBytes() {
+		if (!(THREAD_MX_BEAN instanceof com.sun.management.ThreadMXBean)) {
+			return 0;
+		}
+		return ((com.sun.management.ThreadMXBean) THREAD_MX_BEAN).getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	private static void resetPeakHeapUsage() {
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				pool.resetPeakUsage();
+			}
+		}
+	}
+
+	/** Returns the sum of the peak usages of all heap pools since the last reset. */
+	private static long getPeakHeapUsage() {
+		long peakUsage = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				peakUsage += pool.getPeakUsage().getUsed();
+			}
+		}
+		return peakUsage;
+	}
+
+	private static double toMillis(long nanos) {
+		return nanos / 1_000_000.0;
+	}
+
+	/** Measurements of a single pass. CPU time and allocations include the worker threads of the pass. */
+	public static class PassReport {
+		public final String name;
+		public double wallMillis;
+		public double cpuMillis;
+		public long allocatedBytes;
+		public long bytesIn;
+		public long bytesOut;
+
+		/**
+		 * The peak heap usage during the pass. As the peaks of the individual heap pools are summed up, this is an
+		 * upper bound of the actual peak.
+		 */
+		public long peakHeapBytes;
+
+		/** The measured files, sorted by decreasing wall time. */
+		public final List<FileReport> files = Collections.synchronizedList(new ArrayList<>());
+
+		private final transient Thread passThread = Thread.currentThread();
+		private final transient AtomicLong workerCpuTime = new AtomicLong();
+		private final transient AtomicLong workerAllocatedBytes = new AtomicLong();
+		private final transient AtomicLong bytesInCounter = new AtomicLong();
+		private final transient AtomicLong bytesOutCounter = new AtomicLong();
+
+		private PassReport(String name) {
+			this.name = name;
+		}
+
+		private void addFile(FileReport fileReport, long cpuTime, long allocatedBytes) {
+			files.add(fileReport);
+			if (Thread.currentThread() != passThread) {
+				// Costs of files that are processed on the pass thread are already contained in its own measurement
+				workerCpuTime.addAndGet(cpuTime);
+				workerAllocatedBytes.addAndGet(allocatedBytes);
+			}
+		}
+
+		private void complete(long wallTime, long cpuTime, long allocatedBytes) {
+			wallMillis = toMillis(wallTime);
+			cpuMillis = toMillis(cpuTime + workerCpuTime.get());
+			this.allocatedBytes = allocatedBytes + workerAllocatedBytes.get();
+			bytesIn = bytesInCounter.get();
+			bytesOut = bytesOutCounter.get();
+			files.sort(Comparator.comparingDouble((FileReport file) -> file.wallMillis).reversed());
+			System.out.println("INFO: " + name + " took " + Math.round(wallMillis) + "ms");
+		}
+	}
+
+	/** Measurements of a single file within a pass. */
+	public static class FileReport {
+		public final String path;
+		public double wallMillis;
+		public double cpuMillis;
+		public long allocatedBytes;
+		public long bytesIn;
+		public long bytesOut;
+
+		private FileReport(String path) {
+			this.path = path;
+		}
+	}
+}
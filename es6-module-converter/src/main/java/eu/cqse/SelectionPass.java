@@ -1,61 +1,115 @@
 package eu.cqse;
 
+import com.google.common.base.Preconditions;
+
 import java.io.File;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.IntStream;
 
 public class SelectionPass {
 
+	/** Frontiers with at least this many namespaces are expanded in parallel. */
+	private static final int PARALLEL_FRONTIER_SIZE = 4096;
+
+	/** The maximum number of profiles, as the profiles of each namespace are stored as bits of a long. */
+	static final int MAX_PROFILES = Long.SIZE;
+
 	public Set<File> process(ReaderPass depsFile, boolean includeTests, Set<String> tsRequiredNamespaces) {
-		HashMap<String, ClosureDependency> depsByProvide = getStringClosureDependencies(depsFile);
-		return calculateTransitiveClosure(depsByProvide, includeTests, tsRequiredNamespaces);
+		return process(depsFile, includeTests, List.of(tsRequiredNamespaces)).keySet();
+	}
+
+	/**
+	 * Selects the files that are transitively required by the namespaces of any of the given profiles.
+	 *
+	 * @return the profiles each selected file is required by as bit mask, where bit i stands for the i-th profile.
+	 */
+	public Map<File, Long> process(ReaderPass depsFile, boolean includeTests, List<Set<String>> profiles) {
+		Preconditions.checkArgument(profiles.size() <= MAX_PROFILES, "At most " + MAX_PROFILES + " profiles are supported");
+		return calculateTransitiveClosures(DependencyGraph.of(depsFile), includeTests, profiles);
 	}
 
-	private Set<File> calculateTransitiveClosure(HashMap<String, ClosureDependency> depsByProvide, boolean includeTests, Set<String> tsRequiredNamespaces) {
-		Set<File> transitivelyRequiredClosureFiles = new HashSet<>();
-		Set<String> unsatisfiedDependencies = new HashSet<>(tsRequiredNamespaces);
-		Set<String> processedDependencies = new HashSet<>();
-		while (!unsatisfiedDependencies.isEmpty()) {
-			for (String unsatisfiedDependency : new HashSet<>(unsatisfiedDependencies)) {
-				if (!depsByProvide.containsKey(unsatisfiedDependency)) {
-					throw new AssertionError("Dependency " + unsatisfiedDependency + " is unknown!");
+	/**
+	 * Traverses the graph breadth first for all profiles at once. Each namespace and file carries the bit mask of the
+	 * profiles it is required by, and a namespace is expanded again whenever it is reached by further profiles. Each
+	 * level of the traversal expands the namespaces whose profiles changed in the previous level, so large levels can
+	 * be expanded concurrently. The masks are therefore kept in atomic arrays.
+	 */
+	private Map<File, Long> calculateTransitiveClosures(DependencyGraph graph, boolean includeTests, List<Set<String>> profiles) {
+		AtomicLongArray profilesOfNamespace = new AtomicLongArray(graph.getNamespaceCount());
+		AtomicLongArray profilesOfFile = new AtomicLongArray(graph.getFileCount());
+
+		IntStream.Builder roots = IntStream.builder();
+		for (int profile = 0; profile < profiles.size(); profile++) {
+			for (String requiredNamespace : profiles.get(profile)) {
+				int namespaceId = graph.getNamespaceId(requiredNamespace);
+				if (namespaceId < 0) {
+					throw new AssertionError("Dependency " + requiredNamespace + " is unknown!");
 				}
-				ClosureDependency closureDependency = depsByProvide.get(unsatisfiedDependency);
-				transitivelyRequiredClosureFiles.add(closureDependency.file);
-				processedDependencies.add(unsatisfiedDependency);
-				unsatisfiedDependencies.remove(unsatisfiedDependency);
-				for (String require : closureDependency.requires) {
-					if (!processedDependencies.contains(require)) {
-						unsatisfiedDependencies.add(require);
-					}
+				if (addProfiles(profilesOfNamespace, namespaceId, 1L << profile)) {
+					roots.add(namespaceId);
 				}
-				ClosureDependency closureTestDependency = depsByProvide.get(unsatisfiedDependency + "Test");
-				if (includeTests && closureTestDependency != null) {
-					transitivelyRequiredClosureFiles.add(closureTestDependency.file);
-					processedDependencies.add(unsatisfiedDependency);
-					for (String require : closureTestDependency.requires) {
-						if (!processedDependencies.contains(require)) {
-							unsatisfiedDependencies.add(require);
-						}
-					}
+			}
+		}
+
+		int[] frontier = roots.build().distinct().toArray();
+		while (frontier.length > 0) {
+			IntStream namespaces = IntStream.of(frontier);
+			if (frontier.length >= PARALLEL_FRONTIER_SIZE) {
+				namespaces = namespaces.parallel();
+			}
+			frontier = namespaces.flatMap(namespaceId -> {
+				int fileId = graph.getFileOfNamespace(namespaceId);
+				if (fileId == DependencyGraph.NO_FILE) {
+					throw new AssertionError("Dependency " + graph.getNamespace(namespaceId) + " is unknown!");
+				}
+				long namespaceProfiles = profilesOfNamespace.get(namespaceId);
+				IntStream.Builder unsatisfiedNamespaces = IntStream.builder();
+				addFile(graph, fileId, namespaceProfiles, profilesOfFile, profilesOfNamespace, unsatisfiedNamespaces);
+				int testFileId = graph.getTestFileOfNamespace(namespaceId);
+				if (includeTests && testFileId != DependencyGraph.NO_FILE) {
+					addFile(graph, testFileId, namespaceProfiles, profilesOfFile, profilesOfNamespace,
+							unsatisfiedNamespaces);
 				}
+				return unsatisfiedNamespaces.build();
+			}).distinct().toArray();
+		}
+
+		Map<File, Long> transitivelyRequiredClosureFiles = new HashMap<>();
+		for (int fileId = 0; fileId < graph.getFileCount(); fileId++) {
+			long fileProfiles = profilesOfFile.get(fileId);
+			if (fileProfiles != 0) {
+				transitivelyRequiredClosureFiles.put(graph.getFile(fileId), fileProfiles);
 			}
 		}
 		return transitivelyRequiredClosureFiles;
 	}
 
-	private HashMap<String, ClosureDependency> getStringClosureDependencies(ReaderPass closureLib) {
-		HashMap<String, ClosureDependency> depsByProvide = new HashMap<>();
-		for (String providedNamespace : closureLib.filesByNamespace.keySet()) {
-			ClosureDependency dependency = new ClosureDependency();
-			dependency.file = closureLib.filesByNamespace.get(providedNamespace);
-			dependency.requires = closureLib.requiresByFile.get(dependency.file).stream()
-					.filter(r -> r.requireType != GoogRequireOrForwardDeclare.ERequireType.IMPLICIT_LENIENT)
-					.map(r -> r.requiredNamespace).collect(Collectors.toList());
-			depsByProvide.put(providedNamespace, dependency);
+	/**
+	 * Adds the given profiles to the given file and passes the profiles it did not have yet on to its requires.
+	 * Requires that gain profiles are added to the next frontier.
+	 */
+	private static void addFile(DependencyGraph graph, int fileId, long profiles, AtomicLongArray profilesOfFile,
+								AtomicLongArray profilesOfNamespace, IntStream.Builder unsatisfiedNamespaces) {
+		long newProfiles = profiles & ~profilesOfFile.getAndAccumulate(fileId, profiles, (old, added) -> old | added);
+		if (newProfiles == 0) {
+			// The profiles have already been passed on via another namespace the file provides
+			return;
 		}
-		return depsByProvide;
+		for (int i = graph.getRequiresStart(fileId); i < graph.getRequiresEnd(fileId); i++) {
+			int requiredNamespaceId = graph.getRequire(i);
+			if (addProfiles(profilesOfNamespace, requiredNamespaceId, newProfiles)) {
+				unsatisfiedNamespaces.add(requiredNamespaceId);
+			}
+		}
+	}
+
+	/** Adds the given profiles to the given namespace and returns whether it has not had all of them before. */
+	private static boolean addProfiles(AtomicLongArray profilesOfNamespace, int namespaceId, long profiles) {
+		long previousProfiles = profilesOfNamespace.getAndAccumulate(namespaceId, profiles, (old, added) -> old | added);
+		return (profiles & ~previousProfiles) != 0;
 	}
 }
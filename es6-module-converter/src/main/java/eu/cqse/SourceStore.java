@@ -0,0 +1,229 @@
+package eu.cqse;
+
+import com.google.common.io.Files;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * In-memory view of a source tree that is shared between the conversion passes.
+ * <p>
+ * Files are read from disk on first access and kept in memory afterwards. Writes and deletions only
+ * change the in-memory state and are written back to disk by {@link #flush()}, so a full conversion
+ * reads and writes every file only once. Flushed files are replaced rather than overwritten, so hard links to
+ * them are broken up instead of being written through. The store is thread-safe.
+ * <p>
+ * Every change that actually alters a file increments the generation of the store, so that derived data like the
+ * dependency graph can tell which files changed since it has been built.
+ */
+public class SourceStore {
+
+	private final Map<Path, SourceFile> sources = new ConcurrentHashMap<>();
+	/** The deleted files and the generation of their deletion. */
+	private final Map<Path, Long> deletedFiles = new ConcurrentHashMap<>();
+	private final AtomicLong generation = new AtomicLong();
+
+	/** Returns the current content of the given file, reading it from disk if it is not known yet. */
+	public String read(File file) {
+		Path key = keyOf(file);
+		if (deletedFiles.containsKey(key)) {
+			throw new IllegalStateException("File " + file + " has already been deleted");
+		}
+		String content = sources.computeIfAbsent(key, path -> new SourceFile(FileUtils.getFileContentSafe(path.toFile()), false, 0)).content;
+		RunReport.recordBytesIn(content);
+		return content;
+	}
+
+	/**
+	 * Returns the current content of the given file if it contains one of the given ASCII markers and null
+	 * otherwise. A space in a marker matches any whitespace, including none, e.g. "goog . provide (" matches
+	 * "goog.provide(" as well as "goog .provide (". The whole file is searched. Files that are not in memory yet are
+	 * searched byte-wise and only decoded and added to the store if they contain a marker, so irrelevant files are
+	 * read once and never decoded.
+	 */
+	public String readIfContainsAnyOf(File file, String... markers) {
+		Path key = keyOf(file);
+		SourceFile sourceFile = sources.get(key);
+		if (sourceFile == null) {
+			byte[] content;
+			try {
+				content = Files.toByteArray(file);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			// UTF-8 encodes ASCII characters as single bytes that do not occur within other characters
+			if (!containsAnyOf(content.length, position -> content[position], markers)) {
+				return null;
+			}
+			sourceFile = sources.computeIfAbsent(key, path -> new SourceFile(FileUtils.decodeFileContent(content), false, 0));
+		} else {
+			String content = sourceFile.content;
+			if (!containsAnyOf(content.length(), content::charAt, markers)) {
+				return null;
+			}
+		}
+		RunReport.recordBytesIn(sourceFile.content);
+		return sourceFile.content;
+	}
+
+	/** Searches all markers in a single pass over the content with the given length and characters. */
+	private static boolean containsAnyOf(int length, IntUnaryOperator characterAt, String... markers) {
+		for (int position = 0; position < length; position++) {
+			int c = characterAt.applyAsInt(position);
+			for (String marker : markers) {
+				if (c == marker.charAt(0) && startsWith(length, characterAt, position, marker)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private static boolean startsWith(int length, IntUnaryOperator characterAt, int start, String marker) {
+		int position = start;
+		for (int i = 0; i < marker.length(); i++) {
+			char markerCharacter = marker.charAt(i);
+			if (markerCharacter == ' ') {
+				while (position < length && Character.isWhitespace(characterAt.applyAsInt(position))) {
+					position++;
+				}
+				continue;
+			}
+			if (position >= length || characterAt.applyAsInt(position) != markerCharacter) {
+				return false;
+			}
+			position++;
+		}
+		return true;
+	}
+
+	/**
+	 * Sets the content of the given file. The file is created if it does not exist yet. Writing the content the file
+	 * already has does not modify it.
+	 */
+	public void write(File file, String content) {
+		Path key = keyOf(file);
+		SourceFile sourceFile = sources.get(key);
+		if (sourceFile != null && sourceFile.content.equals(content)) {
+			return;
+		}
+		deletedFiles.remove(key);
+		sources.put(key, new SourceFile(content, true, generation.incrementAndGet()));
+		RunReport.recordBytesOut(content);
+	}
+
+	/** Marks the given file as deleted. */
+	public void delete(File file) {
+		Path key = keyOf(file);
+		sources.remove(key);
+		deletedFiles.put(key, generation.incrementAndGet());
+	}
+
+	public boolean exists(File file) {
+		Path key = keyOf(file);
+		if (deletedFiles.containsKey(key)) {
+			return false;
+		}
+		return sources.containsKey(key) || file.isFile();
+	}
+
+	/** Returns the current generation, i.e. the number of changes to the files of the store so far. */
+	public long getGeneration() {
+		return generation.get();
+	}
+
+	/**
+	 * Returns whether the content of the given file has been changed or the file has been deleted after the given
+	 * generation.
+	 */
+	public boolean isModifiedSince(File file, long sinceGeneration) {
+		Path key = keyOf(file);
+		Long deletionGeneration = deletedFiles.get(key);
+		if (deletionGeneration != null) {
+			return deletionGeneration > sinceGeneration;
+		}
+		SourceFile sourceFile = sources.get(key);
+		return sourceFile != null && sourceFile.generation > sinceGeneration;
+	}
+
+	/**
+	 * Lists all files below the given directory, i.e. the files on disk that have not been deleted and the
+	 * files that have only been created in memory so far.
+	 */
+	public List<File> listFiles(File dir) {
+		Path dirKey = keyOf(dir);
+		List<File> files = new ArrayList<>();
+		Set<Path> listedFiles = new HashSet<>();
+		if (dir.isDirectory()) {
+			for (File file : Files.fileTraverser().breadthFirst(dir)) {
+				Path key = keyOf(file);
+				if (file.isFile() && !deletedFiles.containsKey(key)) {
+					files.add(file);
+					listedFiles.add(key);
+				}
+			}
+		}
+		for (Path key : sources.keySet()) {
+			if (key.startsWith(dirKey) && !listedFiles.contains(key)) {
+				files.add(new File(dir, dirKey.relativize(key).toString()));
+			}
+		}
+		return files;
+	}
+
+	/** Writes all modified files to disk and removes the deleted ones. */
+	public void flush() throws IOException {
+		for (Path deletedFile : deletedFiles.keySet()) {
+			deletedFile.toFile().delete();
+		}
+		deletedFiles.clear();
+		for (Map.Entry<Path, SourceFile> entry : sources.entrySet()) {
+			SourceFile sourceFile = entry.getValue();
+			if (sourceFile.isDirty) {
+				replaceFileContent(entry.getKey(), sourceFile.content);
+				sources.put(entry.getKey(), new SourceFile(sourceFile.content, false, sourceFile.generation));
+			}
+		}
+	}
+
+	/**
+	 * Replaces the given file instead of writing into it, so that the content of other files that are hard linked
+	 * to it (e.g. the inputs the output files have been linked to) is never changed.
+	 */
+	private static void replaceFileContent(Path path, String content) throws IOException {
+		Path dir = path.getParent();
+		java.nio.file.Files.createDirectories(dir);
+		Path tempFile = java.nio.file.Files.createTempFile(dir, path.getFileName().toString(), ".tmp");
+		FileUtils.writeFileContent(tempFile.toFile(), content);
+		java.nio.file.Files.move(tempFile, path, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private static Path keyOf(File file) {
+		return file.toPath().toAbsolutePath().normalize();
+	}
+
+	private static class SourceFile {
+		private final String content;
+		private final boolean isDirty;
+
+		/** The generation of the last change of the file, 0 if it has not been changed since it has been read. */
+		private final long generation;
+
+		private SourceFile(String content, boolean isDirty, long generation) {
+			this.content = content;
+			this.isDirty = isDirty;
+			this.generation = generation;
+		}
+	}
+}
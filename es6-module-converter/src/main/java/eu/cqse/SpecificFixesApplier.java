@@ -6,8 +6,8 @@ import java.util.regex.Pattern;
 
 public class SpecificFixesApplier extends FixerBase {
 
-	public SpecificFixesApplier(Path folder) {
-		super(folder, "js");
+	public SpecificFixesApplier(Path folder, SourceStore sources, ConversionCache cache) {
+		super(folder, "js", sources, cache);
 	}
 
 	private static final String DOCUMENTED_PATTERN = "(?ms)^(/\\*\\*((?!\\*/).)*\\*/\\s*)";
@@ -0,0 +1,535 @@
+package eu.cqse;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Removes the top-level declarations of the converted ES6 modules that are not reachable from the exports of the root
+ * files, i.e. the files providing the required namespaces.
+ * <p>
+ * Each file is split into its top-level statements, which start at column 0 outside of brackets, comments and
+ * strings. A statement that declares a single name is owned by that name, as are statements that assign to properties
+ * of it (e.g. "Foo.bar = ..."), as long as the declared or assigned value has no side effects, i.e. it is a literal,
+ * a function or a class that extends a plain identifier, if any, and has no static initializers. All other statements
+ * are always kept. Starting at the exports of the root files and
+ * the statements that are always kept, the names referenced by kept statements are marked as live, following imports
+ * into the exporting files. References are found by identifier tokens, including those in comments and strings, so
+ * JSDoc types keep their declarations alive and the analysis errs on the side of keeping code.
+ * <p>
+ * Afterwards, the statements of dead names, their exports and the imports that are no longer used are removed. Unused
+ * imports of files with statements that are always kept become side effect imports, e.g. "import './foo.js';", so that
+ * these statements still run. Files are never removed, even if all of their declarations are dead.
+ */
+class TreeShakingPass {
+
+	private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_$][\\w$]*");
+	private static final Pattern NAMED_IMPORT = Pattern.compile("^import\\s*\\{([^}]*)}\\s*from\\s*'([^']+)';?");
+	private static final Pattern NAMESPACE_IMPORT = Pattern.compile("^import\\s*\\*\\s*as\\s+([\\w$]+)\\s+from\\s*'([^']+)';?");
+	private static final Pattern EXPORT_LIST = Pattern.compile("^export\\s*\\{([^}]*)}\\s*;?");
+	private static final Pattern DECLARATION = Pattern
+			.compile("^(export\\s+)?(?:(?:async\\s+)?function\\s*\\*?|class|let|const|var)\\s+([\\w$]+)");
+	private static final Pattern PROPERTY_ASSIGNMENT = Pattern.compile("^([\\w$]+)(?:\\s*\\.\\s*[\\w$]+)+\\s*=(?!=)");
+
+	/** The start of a function expression, which has no side effects if nothing follows its body. */
+	private static final Pattern FUNCTION_EXPRESSION = Pattern.compile("^(?:async\\s+)?function\\b");
+	/** The start of a class expression up to its optional name. */
+	private static final Pattern CLASS_EXPRESSION = Pattern.compile("^class(?:\\s+(?!extends\\b)[\\w$]+)?");
+	/** The heritage of a class up to the start of its body, if it is absent or a plain identifier. */
+	private static final Pattern PLAIN_CLASS_HERITAGE = Pattern.compile("^\\s*(?:extends\\s+[\\w$]+\\s*)?\\{");
+	/** A static field or static block of a class body, which are evaluated when the class is defined. */
+	private static final Pattern STATIC_INITIALIZER = Pattern.compile("(?m)(?<![\\w$.])static\\s*(?:\\{|[\\w$]+\\s*(?:=|;|$))");
+	/** The start of an arrow function, whose body only runs when it is called. */
+	private static final Pattern ARROW_FUNCTION = Pattern.compile("^(?:async\\s*)?(?:\\([^()]*\\)|[\\w$]+)\\s*=>");
+	/** A number, string, template without substitutions, boolean, null or undefined. */
+	private static final Pattern LITERAL = Pattern.compile("^(?:-?[\\d.][\\w.]*|'(?:[^'\\\\\\n]|\\\\.)*'|\"(?:[^\"\\\\\\n]|\\\\.)*\"|`[^`$]*`"
+			+ "|true|false|null|undefined)$");
+
+	private final SourceStore sources;
+	private final Map<Path, ModuleFile> modules = new LinkedHashMap<>();
+	private final Deque<Reference> liveReferences = new ArrayDeque<>();
+
+	TreeShakingPass(SourceStore sources) {
+		this.sources = sources;
+	}
+
+	/**
+	 * Removes the dead declarations of the given files.
+	 *
+	 * @return the number of removed statements.
+	 */
+	int process(Collection<File> files, Set<File> rootFiles) {
+		for (File file : files) {
+			if (sources.exists(file)) {
+				modules.put(keyOf(file), new ModuleFile(file, sources.read(file)));
+			}
+		}
+		for (ModuleFile module : modules.values()) {
+			module.statements.stream().filter(statement -> statement.owner == null)
+					.forEach(statement -> markReferencesLive(module, statement));
+		}
+		for (File rootFile : rootFiles) {
+			ModuleFile module = modules.get(keyOf(rootFile));
+			if (module != null) {
+				module.exports.values().forEach(internalName -> liveReferences.add(new Reference(module, internalName)));
+			}
+		}
+		while (!liveReferences.isEmpty()) {
+			markLive(liveReferences.poll());
+		}
+
+		int removedStatements = 0;
+		for (ModuleFile module : modules.values()) {
+			removedStatements += module.removeDeadStatements(sources, modules);
+		}
+		return removedStatements;
+	}
+
+	private void markLive(Reference reference) {
+		ModuleFile module = reference.module;
+		if (!module.liveNames.add(reference.name)) {
+			return;
+		}
+		module.statements.stream().filter(statement -> reference.name.equals(statement.owner))
+				.forEach(statement -> markReferencesLive(module, statement));
+		Import importedName = module.importsByLocalName.get(reference.name);
+		if (importedName == null) {
+			return;
+		}
+		ModuleFile importedModule = modules.get(importedName.path);
+		if (importedModule == null) {
+			return;
+		}
+		if (importedName.importedName == null) {
+			// Namespace imports may access every export
+			importedModule.exports.values().forEach(name -> liveReferences.add(new Reference(importedModule, name)));
+		} else if (importedModule.exports.containsKey(importedName.importedName)) {
+			liveReferences.add(new Reference(importedModule, importedModule.exports.get(importedName.importedName)));
+		}
+	}
+
+	private void markReferencesLive(ModuleFile module, Statement statement) {
+		if (statement.isImportOrExport) {
+			return;
+		}
+		for (String token : statement.tokens) {
+			if (module.declaredNames.contains(token) || module.importsByLocalName.containsKey(token)) {
+				liveReferences.add(new Reference(module, token));
+			}
+		}
+	}
+
+	private static Path keyOf(File file) {
+		return file.toPath().toAbsolutePath().normalize();
+	}
+
+	/** A name that is referenced by live code of a module. */
+	private static class Reference {
+		private final ModuleFile module;
+		private final String name;
+
+		private Reference(ModuleFile module, String name) {
+			this.module = module;
+			this.name = name;
+		}
+	}
+
+	/** A binding created by an import statement. */
+	private static class Import {
+		private final Path path;
+
+		/** The name exported by the imported module or null for namespace imports. */
+		private final String importedName;
+
+		private Import(Path path, String importedName) {
+			this.path = path;
+			this.importedName = importedName;
+		}
+	}
+
+	private static class Statement {
+		private final String text;
+
+		/** The code of the statement without leading comments. */
+		private final String code;
+
+		/** The name whose liveness decides whether the statement is kept or null if it is always kept. */
+		private String owner;
+
+		private boolean isImportOrExport;
+		private final Set<String> tokens = new HashSet<>();
+
+		private Statement(String text, String code) {
+			this.text = text;
+			this.code = code;
+			Matcher matcher = IDENTIFIER.matcher(text);
+			while (matcher.find()) {
+				tokens.add(matcher.group());
+			}
+		}
+	}
+
+	private static class ModuleFile {
+		private final File file;
+		private final List<Statement> statements = new ArrayList<>();
+		private final Set<String> declaredNames = new HashSet<>();
+		private final Map<String, Import> importsByLocalName = new HashMap<>();
+
+		/** The internal names of the exports by their external names. */
+		private final Map<String, String> exports = new LinkedHashMap<>();
+
+		private final Set<String> liveNames = new HashSet<>();
+
+		private ModuleFile(File file, String content) {
+			this.file = file;
+			splitIntoStatements(content);
+			for (Statement statement : statements) {
+				parseStatement(statement);
+			}
+			// Property assignments can only be attributed once all declarations are known
+			for (Statement statement : statements) {
+				Matcher matcher = PROPERTY_ASSIGNMENT.matcher(statement.code);
+				if (statement.owner == null && !statement.isImportOrExport && matcher.lookingAt()
+						&& declaredNames.contains(matcher.group(1))
+						&& isSideEffectFree(statement.code.substring(matcher.end()))) {
+					statement.owner = matcher.group(1);
+				}
+			}
+		}
+
+		private void parseStatement(Statement statement) {
+			Matcher matcher = NAMED_IMPORT.matcher(statement.code);
+			if (matcher.lookingAt()) {
+				statement.isImportOrExport = true;
+				Path path = resolve(matcher.group(2));
+				for (String[] specifier : parseSpecifiers(matcher.group(1))) {
+					importsByLocalName.put(specifier[1], new Import(path, specifier[0]));
+				}
+				return;
+			}
+			matcher = NAMESPACE_IMPORT.matcher(statement.code);
+			if (matcher.lookingAt()) {
+				statement.isImportOrExport = true;
+				importsByLocalName.put(matcher.group(1), new Import(resolve(matcher.group(2)), null));
+				return;
+			}
+			matcher = EXPORT_LIST.matcher(statement.code);
+			if (matcher.lookingAt()) {
+				statement.isImportOrExport = true;
+				for (String[] specifier : parseSpecifiers(matcher.group(1))) {
+					exports.put(specifier[1], specifier[0]);
+				}
+				return;
+			}
+			matcher = DECLARATION.matcher(statement.code);
+			if (matcher.lookingAt() && !declaresSeveralNames(statement.code)
+					&& hasSideEffectFreeInitializer(matcher.group(), statement.code.substring(matcher.end()))) {
+				String name = matcher.group(2);
+				if (!declaredNames.add(name)) {
+					// Redeclarations are not understood, so keep all of them
+					statements.stream().filter(other -> name.equals(other.owner)).forEach(other -> other.owner = null);
+					return;
+				}
+				statement.owner = name;
+				if (matcher.group(1) != null) {
+					exports.put(name, name);
+				}
+			}
+		}
+
+		/**
+		 * Returns whether the given rest of a declaration after the declared name has no side effects. This is the
+		 * case for function declarations, class declarations without side effects, variables without initializer
+		 * and initializers without side effects.
+		 */
+		private static boolean hasSideEffectFreeInitializer(String declaration, String rest) {
+			if (declaration.matches("(?s).*\\bclass\\s+[\\w$]+")) {
+				return isSideEffectFreeClass(stripTrailingSemicolon(stripLeadingComments(rest)));
+			}
+			String initializer = stripLeadingComments(rest);
+			if (!initializer.startsWith("=")) {
+				// The body of a function declaration or the end of a variable declaration without initializer
+				return true;
+			}
+			return isSideEffectFree(initializer.substring(1));
+		}
+
+		/**
+		 * Returns whether evaluating the given value of a declaration or assignment has no side effects, i.e. it is a
+		 * literal, a function or a class. Object and array literals must not contain any calls.
+		 */
+		private static boolean isSideEffectFree(String value) {
+			String code = stripTrailingSemicolon(stripLeadingComments(value));
+			if (ARROW_FUNCTION.matcher(code).lookingAt()) {
+				return true;
+			}
+			Matcher classMatcher = CLASS_EXPRESSION.matcher(code);
+			if (classMatcher.lookingAt()) {
+				return isSideEffectFreeClass(code.substring(classMatcher.end()));
+			}
+			if (FUNCTION_EXPRESSION.matcher(code).lookingAt()) {
+				int bodyStart = code.indexOf('{');
+				return bodyStart >= 0 && getEndOfBrackets(code, bodyStart) == code.length();
+			}
+			if (code.startsWith("{") || code.startsWith("[")) {
+				if (getEndOfBrackets(code, 0) != code.length()) {
+					return false;
+				}
+				boolean[] hasCall = {false};
+				JsCodeUtils.forEachCodeCharacter(code, (position, c) -> hasCall[0] |= c == '(');
+				return !hasCall[0];
+			}
+			return LITERAL.matcher(code).matches();
+		}
+
+		/**
+		 * Returns whether defining a class with the given rest after its name has no side effects. Its heritage, e.g.
+		 * "extends mixin(Base)", and its static fields and blocks are evaluated when the class is defined, so only
+		 * classes that extend a plain identifier, if any, and have no static initializers are free of side effects.
+		 */
+		private static boolean isSideEffectFreeClass(String rest) {
+			Matcher matcher = PLAIN_CLASS_HERITAGE.matcher(rest);
+			if (!matcher.lookingAt()) {
+				return false;
+			}
+			int bodyStart = matcher.end() - 1;
+			if (getEndOfBrackets(rest, bodyStart) != rest.length()) {
+				return false;
+			}
+			// Only the members of the body itself, not the code within their brackets
+			StringBuilder members = new StringBuilder();
+			int[] depth = {0};
+			JsCodeUtils.forEachCodeCharacter(rest.substring(bodyStart), (position, c) -> {
+				if (depth[0] == 1) {
+					members.append(c);
+				}
+				if (c == '(' || c == '[' || c == '{') {
+					depth[0]++;
+				} else if (c == ')' || c == ']' || c == '}') {
+					depth[0]--;
+				}
+			});
+			return !STATIC_INITIALIZER.matcher(members).find();
+		}
+
+		private static String stripTrailingSemicolon(String code) {
+			String stripped = code.strip();
+			return stripped.endsWith(";") ? stripped.substring(0, stripped.length() - 1).strip() : stripped;
+		}
+
+		/** Returns the position after the bracket that closes the one at the given position or -1 if there is none. */
+		private static int getEndOfBrackets(String code, int start) {
+			int[] depth = {0};
+			int[] end = {-1};
+			JsCodeUtils.forEachCodeCharacter(code.substring(start), (position, c) -> {
+				if (end[0] >= 0) {
+					return;
+				}
+				if (c == '(' || c == '[' || c == '{') {
+					depth[0]++;
+				} else if (c == ')' || c == ']' || c == '}') {
+					depth[0]--;
+					if (depth[0] == 0) {
+						end[0] = start + position + 1;
+					}
+				}
+			});
+			return end[0];
+		}
+
+		/** Returns whether the file contains statements that are always kept and therefore run when it is imported. */
+		private boolean hasSideEffects() {
+			return statements.stream().anyMatch(statement -> statement.owner == null && !statement.isImportOrExport
+					&& !statement.code.isEmpty());
+		}
+
+		private Path resolve(String importPath) {
+			return keyOf(new File(file.getParentFile(), importPath));
+		}
+
+		/** Returns the internal and external name of each entry of an import or export list. */
+		private static List<String[]> parseSpecifiers(String specifiers) {
+			List<String[]> result = new ArrayList<>();
+			for (String specifier : specifiers.split(",")) {
+				String[] parts = specifier.trim().split("\\s+as\\s+");
+				if (!parts[0].isEmpty()) {
+					result.add(new String[]{parts[0], parts[parts.length - 1]});
+				}
+			}
+			return result;
+		}
+
+		/** Returns whether the given statement contains a comma outside of brackets, e.g. "let a = 1, b = 2;". */
+		private static boolean declaresSeveralNames(String code) {
+			int[] depth = {0};
+			boolean[] hasComma = {false};
+			JsCodeUtils.forEachCodeCharacter(code, (position, c) -> {
+				if (c == '(' || c == '[' || c == '{') {
+					depth[0]++;
+				} else if (c == ')' || c == ']' || c == '}') {
+					depth[0]--;
+				} else if (c == ',' && depth[0] == 0) {
+					hasComma[0] = true;
+				}
+			});
+			return hasComma[0];
+		}
+
+		/**
+		 * Splits the content at the line starts that are at bracket depth 0 and outside of comments and literals, and
+		 * that start with an identifier or a comment. Statements that consist of comments only are merged into the
+		 * following statement, unless they are file level comments.
+		 */
+		private void splitIntoStatements(String content) {
+			List<Integer> starts = new ArrayList<>();
+			int[] depth = {0};
+			JsCodeUtils.forEachCodeCharacter(content, (position, c) -> {
+				if (c == '(' || c == '[' || c == '{') {
+					depth[0]++;
+				} else if (c == ')' || c == ']' || c == '}') {
+					depth[0]--;
+				} else if (depth[0] == 0 && (position == 0 || content.charAt(position - 1) == '\n')
+						&& (Character.isJavaIdentifierStart(c) || content.startsWith("//", position)
+						|| content.startsWith("/*", position))) {
+					starts.add(position);
+				}
+			});
+			if (starts.isEmpty() || starts.get(0) != 0) {
+				starts.add(0, 0);
+			}
+			starts.add(content.length());
+
+			int statementStart = 0;
+			for (int i = 1; i < starts.size(); i++) {
+				String text = content.substring(statementStart, starts.get(i));
+				String code = stripLeadingComments(text);
+				boolean isLast = i == starts.size() - 1;
+				if (code.isEmpty() && !isLast && !text.contains("@fileoverview") && !text.contains("@license")) {
+					continue;
+				}
+				statements.add(new Statement(text, code));
+				statementStart = starts.get(i);
+			}
+		}
+
+		private static String stripLeadingComments(String text) {
+			int position = 0;
+			while (position < text.length()) {
+				if (Character.isWhitespace(text.charAt(position))) {
+					position++;
+				} else if (text.startsWith("//", position)) {
+					int end = text.indexOf('\n', position);
+					position = end < 0 ? text.length() : end + 1;
+				} else if (text.startsWith("/*", position)) {
+					int end = text.indexOf("*/", position + 2);
+					position = end < 0 ? text.length() : end + 2;
+				} else {
+					break;
+				}
+			}
+			return text.substring(position);
+		}
+
+		/**
+		 * Removes the statements owned by dead names and updates the imports and exports accordingly. Imports are
+		 * updated in all files, as the imported declarations may have been removed from other files.
+		 *
+		 * @return the number of removed statements.
+		 */
+		private int removeDeadStatements(SourceStore sources, Map<Path, ModuleFile> modules) {
+			List<Statement> keptStatements = statements.stream()
+					.filter(statement -> statement.owner == null || liveNames.contains(statement.owner))
+					.collect(Collectors.toList());
+			int removedStatements = statements.size() - keptStatements.size();
+
+			StringBuilder content = new StringBuilder();
+			for (Statement statement : keptStatements) {
+				content.append(statement.isImportOrExport ? removeDeadExports(statement) : statement.text);
+			}
+
+			// Exports may re-export imports, so they count as usages as well
+			Set<String> usedTokens = new HashSet<>();
+			Matcher tokenMatcher = IDENTIFIER.matcher(content.toString().replaceAll("(?m)^import .*$", ""));
+			while (tokenMatcher.find()) {
+				usedTokens.add(tokenMatcher.group());
+			}
+			StringBuilder prunedContent = new StringBuilder();
+			for (String line : content.toString().split("(?<=\n)")) {
+				prunedContent.append(pruneImport(line, usedTokens, modules));
+			}
+			sources.write(file, prunedContent.toString());
+			return removedStatements;
+		}
+
+		/** Removes the dead entries from the export list of the given statement. */
+		private String removeDeadExports(Statement statement) {
+			Matcher matcher = EXPORT_LIST.matcher(statement.code);
+			if (!matcher.lookingAt()) {
+				return statement.text;
+			}
+			List<String[]> specifiers = parseSpecifiers(matcher.group(1));
+			List<String> liveSpecifiers = specifiers.stream().filter(specifier -> liveNames.contains(specifier[0]))
+					.map(TreeShakingPass::toFragment).collect(Collectors.toList());
+			if (liveSpecifiers.size() == specifiers.size()) {
+				return statement.text;
+			}
+			String leadingComments = statement.text.substring(0, statement.text.length() - statement.code.length());
+			String rest = statement.code.substring(matcher.end());
+			if (liveSpecifiers.isEmpty()) {
+				return leadingComments + rest.stripLeading();
+			}
+			return leadingComments + "export {" + String.join(", ", liveSpecifiers) + "};" + rest;
+		}
+
+		/**
+		 * Removes the bindings of the given import line that are not used anymore. If none is used, the import is
+		 * removed or, if the imported file has side effects or is unknown, replaced by a side effect import.
+		 */
+		private String pruneImport(String line, Set<String> usedTokens, Map<Path, ModuleFile> modules) {
+			Matcher matcher = NAMESPACE_IMPORT.matcher(line);
+			if (matcher.lookingAt()) {
+				return usedTokens.contains(matcher.group(1)) ? line : toSideEffectImport(matcher.group(2), modules);
+			}
+			matcher = NAMED_IMPORT.matcher(line);
+			if (!matcher.lookingAt()) {
+				return line;
+			}
+			List<String[]> specifiers = parseSpecifiers(matcher.group(1));
+			List<String> usedSpecifiers = specifiers.stream().filter(specifier -> usedTokens.contains(specifier[1]))
+					.map(TreeShakingPass::toFragment).collect(Collectors.toList());
+			if (usedSpecifiers.size() == specifiers.size()) {
+				return line;
+			}
+			if (usedSpecifiers.isEmpty()) {
+				return toSideEffectImport(matcher.group(2), modules);
+			}
+			return "import {" + String.join(", ", usedSpecifiers) + "} from '" + matcher.group(2) + "';"
+					+ line.substring(matcher.end());
+		}
+
+		private String toSideEffectImport(String importPath, Map<Path, ModuleFile> modules) {
+			ModuleFile importedModule = modules.get(resolve(importPath));
+			if (importedModule != null && !importedModule.hasSideEffects()) {
+				return "";
+			}
+			return "import '" + importPath + "';\n";
+		}
+	}
+
+	/** Formats an import or export list entry like {@link AliasedElement#toEs6Fragment()}. */
+	private static String toFragment(String[] specifier) {
+		return specifier[0].equals(specifier[1]) ? specifier[0] : specifier[0] + " as " + specifier[1];
+	}
+}
@@ -2,8 +2,10 @@ package eu.cqse.es6;
 
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ListMultimap;
+import eu.cqse.ConversionCache;
 import eu.cqse.FileUtils;
 import eu.cqse.JsCodeUtils;
+import eu.cqse.SourceStore;
 
 import java.io.File;
 import java.io.IOException;
@@ -21,13 +23,30 @@ public class Es6ClassConversionPass {
 	private static final Pattern CLASS_MEMBER_PATTERN = Pattern.compile("(?m)^(/\\*\\*((?!\\*/).)*\\*/\\s*)((?:(?!prototype\\.)[\\w.])+)\\.(prototype\\.)?([_a-z]\\w+)" +
 			"(;|\\s?=\\s*)", Pattern.DOTALL);
 
+	private final SourceStore sources;
+	private final ConversionCache cache;
+
+	public Es6ClassConversionPass(SourceStore sources, ConversionCache cache) {
+		this.sources = sources;
+		this.cache = cache;
+	}
+
 	public void process(File inputDir) throws IOException {
-		FileUtils.processRelevantJsFiles(this::processJsFile, inputDir);
+		FileUtils.processRelevantJsFilesInParallel(sources, this::processJsFile, inputDir);
+	}
+
+	/** Converts only the given files. */
+	public void process(List<File> files) {
+		FileUtils.processInParallel(files, this::processJsFile, FileUtils.PARALLELISM);
 	}
 
 	private void processJsFile(File file) {
-		String content = FileUtils.getFileContentSafe(file);
+		String content = sources.read(file);
+		sources.write(file, cache.computeIfAbsent(getClass().getSimpleName(), ConversionCache.hash(content),
+				() -> convertClasses(content)));
+	}
 
+	String convertClasses(String content) {
 		Map<String, GoogInheritsInfo> inherits = getInherits(content);
 		List<Constructor> constructors = getConstructors(content);
 		ListMultimap<String, ClassMember> classMembers = getClassMembers(content);
@@ -45,11 +64,7 @@ public class Es6ClassConversionPass {
 			content = content.replace(classContainer.constructor.fullMatch, es6Class);
 		}
 
-		try {
-			FileUtils.writeFileContent(file, content.replaceAll("\r\n{3,}", "\r\n\\n"));
-		} catch (IOException e) {
-			throw new RuntimeException(e);
-		}
+		return content.replaceAll("\r\n{3,}", "\r\n\\n");
 	}
 
 	private List<ClassContainer> groupByClass(Map<String, GoogInheritsInfo> inherits, List<Constructor> constructors, ListMultimap<String, ClassMember> classMembers) {
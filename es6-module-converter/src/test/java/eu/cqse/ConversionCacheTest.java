@@ -0,0 +1,73 @@
+package eu.cqse;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConversionCacheTest {
+
+	@TempDir
+	File cacheDir;
+
+	@Test
+	void computeIfAbsentRunsConversionOnlyOnce() {
+		ConversionCache cache = new ConversionCache(cacheDir, StringUtils.class);
+		AtomicInteger conversions = new AtomicInteger();
+
+		assertThat(cache.computeIfAbsent("step", "key", () -> "result" + conversions.incrementAndGet())).isEqualTo("result1");
+		assertThat(cache.computeIfAbsent("step", "key", () -> "result" + conversions.incrementAndGet())).isEqualTo("result1");
+		assertThat(cache.computeIfAbsent("other", "key", () -> "result" + conversions.incrementAndGet())).isEqualTo("result2");
+
+		assertThat(cache.getHits()).isEqualTo(1);
+		assertThat(cache.getMisses()).isEqualTo(2);
+	}
+
+	@Test
+	void changedRulesMissAndPurgeOldEntries() {
+		new ConversionCache(cacheDir, StringUtils.class).computeIfAbsent("step", "key", () -> "old");
+
+		ConversionCache changedRules = new ConversionCache(cacheDir, JsCodeUtils.class);
+		assertThat(new File(cacheDir, "step").list()).isEmpty();
+		assertThat(changedRules.computeIfAbsent("step", "key", () -> "new")).isEqualTo("new");
+		assertThat(changedRules.getMisses()).isEqualTo(1);
+	}
+
+	@Test
+	void purgeRemovesUnusedEntries() {
+		ConversionCache cache = new ConversionCache(cacheDir, StringUtils.class);
+		cache.computeIfAbsent("step", "unused", () -> "a");
+		cache.computeIfAbsent("step", "used", () -> "b");
+		File[] generations = new File(cacheDir, "step").listFiles();
+		for (File entry : generations[0].listFiles()) {
+			entry.setLastModified(1000);
+		}
+		cache.computeIfAbsent("step", "used", () -> "c");
+
+		assertThat(cache.purge(2000)).isEqualTo(1);
+		assertThat(cache.computeIfAbsent("step", "used", () -> "d")).isEqualTo("b");
+		assertThat(cache.computeIfAbsent("step", "unused", () -> "e")).isEqualTo("e");
+	}
+
+	@Test
+	void purgeKeepsOtherFilesOfTheCacheDir() throws Exception {
+		File index = new File(cacheDir, "reader-index.json");
+		FileUtils.writeFileContent(index, "{}");
+
+		new ConversionCache(cacheDir, StringUtils.class);
+
+		assertThat(index.isFile()).isTrue();
+	}
+
+	@Test
+	void hashByteCodeIncludesNestedClasses() {
+		String withNestedClasses = ConversionCache.hashByteCode(NamespacePatternCache.class);
+
+		assertThat(ConversionCache.hashByteCode(NamespacePatternCache.EShape.class).length()).isEqualTo(64);
+		assertThat(withNestedClasses).isEqualTo(ConversionCache.hashByteCode(NamespacePatternCache.class));
+		assertThat(withNestedClasses).isNotEqualTo(ConversionCache.hashByteCode(NamespacePatternCache.EShape.class));
+	}
+}
@@ -0,0 +1,89 @@
+package eu.cqse;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/** Converts a small closure library with several profiles end to end. */
+class ConversionSmokeTest {
+
+	/** The length of the generated require chain. */
+	private static final int CHAIN_LENGTH = 20;
+
+	@TempDir
+	File tempDir;
+
+	private File inputDir;
+	private File googDir;
+	private File outputDir;
+	private RunReport report;
+
+	@BeforeEach
+	void convertCorpus() throws Exception {
+		inputDir = new File(tempDir, "closure-library");
+		googDir = new File(inputDir, "closure/goog");
+		outputDir = new File(tempDir, "ts-closure-library/lib");
+		TestFiles.write(googDir, ReaderPass.BASE_JS, "var goog = goog || {};\n");
+		TestFiles.write(googDir, ReaderPass.GOOG_JS, "goog.module('goog');\n\nconst VERSION = 1;\n\nexports = {VERSION};\n");
+		TestFiles.write(googDir, "shapes/shape.js", "goog.provide('test.shapes.Shape');\n\n"
+				+ "/**\n * @param {number} size\n * @constructor\n */\ntest.shapes.Shape = function(size) {\n"
+				+ "  /** @protected {number} */\n  this.size = size;\n};\n");
+		TestFiles.write(googDir, "shapes/circle.js", "goog.provide('test.shapes.Circle');\n\ngoog.require('test.shapes.Shape');\n\n"
+				+ "/**\n * @param {number} size\n * @constructor\n * @extends {test.shapes.Shape}\n */\n"
+				+ "test.shapes.Circle = function(size) {\n  test.shapes.Circle.base(this, 'constructor', size);\n};\n"
+				+ "goog.inherits(test.shapes.Circle, test.shapes.Shape);\n");
+		TestFiles.write(googDir, "math/math.js", "goog.module('test.math');\n\n/** @param {number} x */\nfunction square(x) {\n"
+				+ "  return x * x;\n}\n\nexports = {square};\n");
+		TestFiles.write(googDir, "unused.js", "goog.provide('test.Unused');\n");
+		for (int i = 0; i < CHAIN_LENGTH; i++) {
+			String require = i == 0 ? "" : "goog.require('test.chain.F" + (i - 1) + "');\n\n";
+			String construction = i == 0 ? "" : "  new test.chain.F" + (i - 1) + "();\n";
+			TestFiles.write(googDir, "chain/f" + i + ".js", "goog.provide('test.chain.F" + i + "');\n\n" + require
+					+ "/** @constructor */\ntest.chain.F" + i + " = function() {\n" + construction + "};\n");
+		}
+
+		Map<String, Set<String>> profiles = new LinkedHashMap<>();
+		profiles.put("shapes", Set.of("test.shapes.Circle"));
+		profiles.put("math", Set.of("test.math"));
+		profiles.put("chain", Set.of("test.chain.F" + (CHAIN_LENGTH - 1), "test.shapes.Shape"));
+		report = new RunReport();
+		Es6ModuleMasterConverter.convert(report, inputDir, outputDir, profiles, ConversionCache.DISABLED,
+				ReaderPassIndex.DISABLED);
+	}
+
+	@Test
+	void writesTheManifestOfEachProfile() {
+		assertThat(readManifest("shapes")).isEqualTo("shapes/circle.js\nshapes/shape.js\n");
+		assertThat(readManifest("math")).isEqualTo("math/math.js\n");
+		String chainManifest = readManifest("chain");
+		assertThat(chainManifest.split("\n")).hasSize(CHAIN_LENGTH + 1);
+		assertThat(chainManifest).startsWith("chain/f0.js\nchain/f1.js\n").endsWith("chain/f9.js\nshapes/shape.js\n");
+
+		assertThat(report.counters).containsEntry("profiles.shapes.files", 2L);
+		assertThat(report.counters).containsEntry("profiles.chain.files", (long) CHAIN_LENGTH + 1);
+	}
+
+	@Test
+	void convertsOnlySelectedFilesToModules() {
+		assertThat(new File(outputDir, "unused.js").exists()).isFalse();
+		assertThat(readOutput("shapes/circle.js")).contains("import {Shape} from './shape.js';")
+				.contains("class Circle extends Shape").contains("export {Circle};");
+		assertThat(readOutput("math/math.js")).contains("export {square};").doesNotContain("goog.module");
+		assertThat(readOutput("chain/f5.js")).contains("import {F4} from './f4.js';").contains("new F4()");
+	}
+
+	private String readManifest(String profileName) {
+		return FileUtils.getFileContentSafe(new File(outputDir.getParentFile(), "manifests/" + profileName + ".txt"));
+	}
+
+	private String readOutput(String path) {
+		return FileUtils.getFileContentSafe(new File(outputDir, path));
+	}
+}
@@ -1,17 +1,56 @@
 package eu.cqse;
 
+import com.google.common.collect.ImmutableSetMultimap;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.File;
 import java.util.Collections;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
 class ConvertingPassTest {
 
+	@TempDir
+	File tempDir;
+
 	@Test
 	void fixGoogDefineKeywords() {
 		assertThat(ConvertingPass.fixGoogDefineKeywords("goog.define('goog.userAgent.product.ASSUME_SAFARI', false);" +
 				"\n some(goog.userAgent.product.ASSUME_SAFARI)", Collections.emptyList()))
 				.isEqualTo("const ASSUME_SAFARI = goog.define('goog.userAgent.product.ASSUME_SAFARI', false);\n some(ASSUME_SAFARI)");
 	}
-}
\ No newline at end of file
+
+	@Test
+	void convertFileDoesNotChangeTheReaderPass() throws Exception {
+		File dir = new File(tempDir, "closure-library");
+		TestFiles.write(dir, "a.js", "goog.provide('test.A');\n\n/** @constructor */\ntest.A = function() {};\n");
+		File b = TestFiles.write(dir, "b.js", "goog.provide('test.B');\n\ngoog.require('test.A');\n\n"
+				+ "/** @constructor */\ntest.B = function() {\n  new test.A();\n};\n");
+		SourceStore sources = new SourceStore();
+		ReaderPass readerPass = new ReaderPass(sources);
+		readerPass.process(dir);
+		ConvertingPass convertingPass = new ConvertingPass(sources, ConversionCache.DISABLED);
+
+		String firstConversion = convertingPass.convertFile(b, readerPass, sources.read(b));
+		assertThat(firstConversion).contains("import {A} from './a.js';");
+		assertThat(readerPass.requiresByFile.get(b)).extracting(require -> require.shortReference).containsExactly((String) null);
+		assertThat(convertingPass.convertFile(b, readerPass, sources.read(b))).isEqualTo(firstConversion);
+	}
+
+	@Test
+	void typeOnlyRequiresAreDeclaredAsUnknownTypes() throws Exception {
+		File dir = new File(tempDir, "closure-library");
+		File a = TestFiles.write(dir, "a.js", "goog.provide('test.A');\n\n/** @constructor */\ntest.A = function() {};\n");
+		File b = TestFiles.write(dir, "b.js", "goog.provide('test.B');\n\ngoog.require('test.A');\n\n"
+				+ "/** @param {!test.A} a */\ntest.B = function(a) {};\n");
+		SourceStore sources = new SourceStore();
+		ReaderPass readerPass = new ReaderPass(sources);
+		readerPass.process(dir);
+
+		String conversion = new ConvertingPass(sources, ConversionCache.DISABLED, ImmutableSetMultimap.of(b, a))
+				.convertFile(b, readerPass, sources.read(b));
+		assertThat(conversion).contains("/** @typedef {?} */\nlet A; // Type of './a.js'")
+				.contains("@param {!A} a").doesNotContain("import(").doesNotContain("from './a.js'");
+	}
+}
@@ -0,0 +1,132 @@
+package eu.cqse;
+
+import com.google.common.collect.ImmutableSetMultimap;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CyclicDependencyRemovalPassTest {
+
+	@TempDir
+	File tempDir;
+
+	private final SourceStore sources = new SourceStore();
+
+	@Test
+	void requiresOnlyUsedInJsDocAreTypeOnly() throws IOException {
+		File dir = new File(tempDir, "closure-library");
+		File a = TestFiles.write(dir, "a.js", "goog.provide('x.A');\n\ngoog.require('x.B');\n\n"
+				+ "x.A = function() {\n  new x.B();\n};\n");
+		File b = TestFiles.write(dir, "b.js", "goog.provide('x.B');\n\ngoog.forwardDeclare('x.A');\n\n"
+				+ "/** @param {x.A} a */\nx.B = function(a) {\n  const s = 'x.A';\n};\n");
+
+		CyclicDependencyRemovalPass pass = process(dir);
+		assertThat(pass.getCycles()).containsExactly(List.of(a, b));
+		assertThat(pass.getMergedFiles()).isEmpty();
+		assertThat(pass.getTypeOnlyRequires().keySet()).containsExactly(b);
+		assertThat(pass.getTypeOnlyRequires().get(b)).containsExactly(a);
+	}
+
+	@Test
+	void cyclesClosedByJsDocTypesAreTypeOnly() throws IOException {
+		File dir = new File(tempDir, "closure-library");
+		File a = TestFiles.write(dir, "a.js", "goog.provide('x.A');\n\ngoog.require('x.B');\n\n"
+				+ "x.A = function() {\n  new x.B();\n};\n");
+		File b = TestFiles.write(dir, "b.js", "goog.provide('x.B');\n\n/** @param {!x.A} a */\nx.B = function(a) {};\n");
+
+		CyclicDependencyRemovalPass pass = process(dir);
+		assertThat(pass.getCycles()).containsExactly(List.of(a, b));
+		assertThat(pass.getMergedFiles()).isEmpty();
+		assertThat(pass.getTypeOnlyRequires().get(b)).containsExactly(a);
+	}
+
+	@Test
+	void unusedRequiresWithoutShortReferenceAreKeptForSideEffects() throws IOException {
+		File dir = new File(tempDir, "closure-library");
+		File a = TestFiles.write(dir, "a.js", "goog.provide('x.A');\n\ngoog.require('x.B');\n\n"
+				+ "x.A = function() {\n  new x.B();\n};\n");
+		File b = TestFiles.write(dir, "b.js", "goog.provide('x.B');\n\ngoog.require('x.A');\n\nx.B = function() {};\n");
+
+		CyclicDependencyRemovalPass pass = process(dir);
+		assertThat(pass.getTypeOnlyRequires().isEmpty()).isTrue();
+		assertThat(pass.getMergedFiles()).containsExactlyInAnyOrder(a, b);
+	}
+
+	@Test
+	void declarationOfShortReferenceIsNoUsage() throws IOException {
+		File dir = new File(tempDir, "closure-library");
+		File a = TestFiles.write(dir, "a.js", "goog.provide('x.A');\n\ngoog.require('x.B');\n\n"
+				+ "x.A = function() {\n  new x.B();\n};\n");
+		File b = TestFiles.write(dir, "b.js", "goog.provide('x.B');\n\nconst A = goog.require('x.A');\n\n"
+				+ "/** @param {A} a */\nx.B = function(a) {};\n");
+
+		CyclicDependencyRemovalPass pass = process(dir);
+		assertThat(pass.getMergedFiles()).isEmpty();
+		assertThat(pass.getTypeOnlyRequires().get(b)).containsExactly(a);
+	}
+
+	@Test
+	void shortReferenceInTemplateInterpolationIsRuntimeUsage() throws IOException {
+		File dir = new File(tempDir, "closure-library");
+		File a = TestFiles.write(dir, "a.js", "goog.provide('x.A');\n\ngoog.require('x.B');\n\n"
+				+ "x.A = function() {\n  new x.B();\n};\n");
+		File b = TestFiles.write(dir, "b.js", "goog.provide('x.B');\n\nconst A = goog.require('x.A');\n\n"
+				+ "x.B = function() {\n  return `${A.name}`;\n};\n");
+
+		CyclicDependencyRemovalPass pass = process(dir);
+		assertThat(pass.getTypeOnlyRequires().isEmpty()).isTrue();
+		assertThat(pass.getMergedFiles()).containsExactlyInAnyOrder(a, b);
+		// The required file comes first, so the cycle is merged into the requiring file
+		assertThat(pass.getFinalFile(b)).isEqualTo(a);
+		assertThat(sources.exists(b)).isFalse();
+	}
+
+	@Test
+	void cyclesAreMergedInRuntimeRequireOrder() throws IOException {
+		File dir = new File(tempDir, "closure-library");
+		File a = TestFiles.write(dir, "a.js", "goog.provide('x.A');\n\ngoog.require('x.C');\n\n"
+				+ "x.A = function() {\n  new x.C();\n};\n");
+		File b = TestFiles.write(dir, "b.js", "goog.provide('x.B');\n\ngoog.require('x.A');\n\n"
+				+ "x.B = function() {\n  new x.A();\n};\n");
+		File c = TestFiles.write(dir, "c.js", "goog.provide('x.C');\n\ngoog.forwardDeclare('x.B');\n\n"
+				+ "x.C = function() {\n  new x.B();\n};\n");
+
+		CyclicDependencyRemovalPass pass = process(dir);
+		// The forward declaration is used at runtime, so b is merged before c
+		assertThat(pass.getFinalFile(b)).isEqualTo(a);
+		assertThat(pass.getFinalFile(c)).isEqualTo(a);
+		String merged = sources.read(a);
+		assertThat(merged.indexOf("x.B = ")).isLessThan(merged.indexOf("x.C = "));
+		assertThat(merged.indexOf("x.C = ")).isLessThan(merged.indexOf("x.A = "));
+		assertThat(merged).doesNotContain("goog.require(").doesNotContain("goog.forwardDeclare(");
+	}
+
+	@Test
+	void runtimeCyclesAreTheMutuallyReachableFiles() {
+		File a = new File("a.js");
+		File b = new File("b.js");
+		File c = new File("c.js");
+		File d = new File("d.js");
+		File e = new File("e.js");
+		List<File> cycle = List.of(a, b, c, d, e);
+
+		assertThat(CyclicDependencyRemovalPass.getRuntimeCycles(cycle,
+				ImmutableSetMultimap.of(a, b, b, a, c, d, d, b))).containsExactly(List.of(a, b));
+		assertThat(CyclicDependencyRemovalPass.getRuntimeCycles(cycle,
+				ImmutableSetMultimap.of(a, b, b, c, c, a, d, e, e, d))).containsExactly(List.of(a, b, c), List.of(d, e));
+		assertThat(CyclicDependencyRemovalPass.getRuntimeCycles(cycle, ImmutableSetMultimap.of(a, b, c, d))).isEmpty();
+	}
+
+	private CyclicDependencyRemovalPass process(File dir) throws IOException {
+		ReaderPass graph = new ReaderPass(sources);
+		graph.process(dir);
+		CyclicDependencyRemovalPass pass = new CyclicDependencyRemovalPass(dir, sources);
+		pass.process(graph);
+		return pass;
+	}
+}
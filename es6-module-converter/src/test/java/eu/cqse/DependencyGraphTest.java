@@ -0,0 +1,76 @@
+package eu.cqse;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DependencyGraphTest {
+
+	@TempDir
+	File tempDir;
+
+	private File dir;
+
+	@BeforeEach
+	void createLibraryDir() {
+		dir = new File(tempDir, "closure-library");
+	}
+
+	@Test
+	void selfRequiresAreNoCycles() throws IOException {
+		TestFiles.write(dir, "a.js", "goog.provide('x.a');\ngoog.provide('x.a.Inner');\n\ngoog.require('x.a.Inner');\n");
+
+		assertThat(getCycles()).isEmpty();
+	}
+
+	@Test
+	void findsDisjointCycles() throws IOException {
+		File a = TestFiles.write(dir, "a.js", "goog.provide('x.a');\n\ngoog.require('x.b');\n");
+		File b = TestFiles.write(dir, "b.js", "goog.provide('x.b');\n\ngoog.forwardDeclare('x.a');\n");
+		File c = TestFiles.write(dir, "c.js", "goog.provide('x.c');\n\ngoog.require('x.d');\n");
+		File d = TestFiles.write(dir, "d.js", "goog.provide('x.d');\n\ngoog.require('x.e');\n");
+		File e = TestFiles.write(dir, "e.js", "goog.provide('x.e');\n\ngoog.forwardDeclare('x.c');\ngoog.require('x.a');\n");
+		TestFiles.write(dir, "f.js", "goog.provide('x.f');\n\ngoog.require('x.a');\ngoog.require('x.c');\n");
+
+		assertThat(getCycles()).containsExactly(List.of(a, b), List.of(c, d, e));
+	}
+
+	@Test
+	void typeReferencesAreOnlyImportEdges() throws IOException {
+		File a = TestFiles.write(dir, "a.js", "goog.provide('x.a');\n\ngoog.require('x.b');\n");
+		File b = TestFiles.write(dir, "b.js", "goog.provide('x.b');\n\n/** @param {x.a} a */\nx.b = function(a) {};\n");
+
+		assertThat(getCycles()).isEmpty();
+		assertThat(DependencyGraph.ofImports(read()).getCycles()).containsExactly(List.of(a, b));
+	}
+
+	@Test
+	void findsCyclesOfLongRequireChains() throws IOException {
+		int length = 5000;
+		List<File> files = new ArrayList<>();
+		for (int i = 0; i < length; i++) {
+			String require = i == length - 1 ? "goog.forwardDeclare('x.f0');" : "goog.require('x.f" + (i + 1) + "');";
+			files.add(TestFiles.write(dir, "f" + i + ".js", "goog.provide('x.f" + i + "');\n\n" + require + "\n"));
+		}
+		files.sort(null);
+
+		assertThat(getCycles()).containsExactly(files);
+	}
+
+	private List<List<File>> getCycles() throws IOException {
+		return DependencyGraph.of(read()).getCycles();
+	}
+
+	private ReaderPass read() throws IOException {
+		ReaderPass graph = new ReaderPass(new SourceStore());
+		graph.process(dir);
+		return graph;
+	}
+}
@@ -0,0 +1,82 @@
+package eu.cqse;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IncrementalConverterTest {
+
+	@TempDir
+	File tempDir;
+
+	private File inputDir;
+	private File googDir;
+	private File outputDir;
+	private IncrementalConverter converter;
+
+	@BeforeEach
+	void convertCorpus() throws Exception {
+		inputDir = new File(tempDir, "closure-library");
+		googDir = new File(inputDir, "closure/goog");
+		outputDir = new File(tempDir, "ts-closure-library/lib");
+		TestFiles.write(googDir, ReaderPass.BASE_JS, "var goog = goog || {};\n");
+		TestFiles.write(googDir, ReaderPass.GOOG_JS, "goog.module('goog');\n\nconst VERSION = 1;\n\nexports = {VERSION};\n");
+		TestFiles.write(googDir, "a.js", "goog.provide('test.A');\n\n/** @constructor */\ntest.A = function() {};\n");
+		TestFiles.write(googDir, "b.js", "goog.provide('test.B');\n\ngoog.require('test.A');\n\n"
+				+ "/** @constructor */\ntest.B = function() {\n  new test.A();\n};\n");
+		TestFiles.write(googDir, "c.js", "goog.provide('test.C');\n\ngoog.require('test.D');\n\n"
+				+ "/** @constructor */\ntest.C = function() {\n  new test.D();\n};\n");
+		TestFiles.write(googDir, "d.js", "goog.provide('test.D');\n\ngoog.require('test.C');\n\n"
+				+ "/** @constructor */\ntest.D = function() {\n  new test.C();\n};\n");
+		Map<String, Set<String>> profiles = Collections.singletonMap("default", Set.of("test.B", "test.C"));
+		converter = Es6ModuleMasterConverter.convert(new RunReport(), inputDir, outputDir, profiles,
+				ConversionCache.DISABLED, ReaderPassIndex.DISABLED);
+	}
+
+	@Test
+	void changeOfBodyIsReconverted() throws Exception {
+		File input = TestFiles.write(googDir, "a.js", "goog.provide('test.A');\n\n/** @constructor */\ntest.A = function() {\n  this.x = 1;\n};\n");
+
+		assertThat(converter.reconvert(Set.of(input))).isTrue();
+		assertThat(FileUtils.getFileContentSafe(new File(outputDir, "a.js"))).contains("this.x = 1;");
+	}
+
+	@Test
+	void filesThatAreNotConvertedAreIgnored() throws Exception {
+		File input = TestFiles.write(googDir, "unused.js", "goog.provide('test.Unused');\n");
+
+		assertThat(converter.reconvert(Set.of(input))).isTrue();
+	}
+
+	@Test
+	void deletedInputRequiresFullConversion() throws Exception {
+		File input = new File(inputDir, "closure/goog/a.js");
+		assertThat(input.delete()).isTrue();
+
+		assertThat(converter.reconvert(Set.of(input))).isFalse();
+	}
+
+	@Test
+	void changeOfCycleRequiresFullConversion() throws Exception {
+		File input = TestFiles.write(googDir, "c.js", "goog.provide('test.C');\n\ngoog.require('test.D');\n\n"
+				+ "/** @constructor */\ntest.C = function() {\n  new test.D();\n  this.x = 1;\n};\n");
+
+		assertThat(converter.reconvert(Set.of(input))).isFalse();
+	}
+
+	@Test
+	void unknownRequireRequiresFullConversion() throws Exception {
+		File input = TestFiles.write(googDir, "b.js", "goog.provide('test.B');\n\ngoog.require('test.A');\ngoog.require('test.Unused');\n\n"
+				+ "/** @constructor */\ntest.B = function() {\n  new test.A();\n};\n");
+		TestFiles.write(googDir, "unused.js", "goog.provide('test.Unused');\n");
+
+		assertThat(converter.reconvert(Set.of(input))).isFalse();
+	}
+}
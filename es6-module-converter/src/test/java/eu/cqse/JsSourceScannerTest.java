@@ -0,0 +1,82 @@
+package eu.cqse;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.regex.MatchResult;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JsSourceScannerTest {
+
+	@Test
+	void extractsProvidesRequiresAndExports() {
+		JsSourceScanner.ScanResult result = JsSourceScanner.scan("goog.module('a.b');\n" +
+				"const {c, d: e} = goog.require('x.y');\n" +
+				"goog.forwardDeclare('x.z');\n\n" +
+				"exports = {c};\n" +
+				"exports.f = 1;\n");
+		assertThat(result.providesOrModules).extracting(match -> match.group(1)).containsExactly("a.b");
+		assertThat(result.requires).extracting(match -> match.group(2)).containsExactly("x.y", "x.z");
+		assertThat(result.defaultExports).extracting(MatchResult::group).containsExactly("\nexports = {c};");
+		assertThat(result.dottedExports).extracting(match -> match.group(1)).containsExactly("f");
+	}
+
+	@Test
+	void extractsStatementsWithoutSemicolons() {
+		JsSourceScanner.ScanResult result = JsSourceScanner.scan("goog.provide('a.b')\n" +
+				"goog.require('x.y')\n" +
+				"goog.require('z.w');\n");
+		assertThat(result.providesOrModules).extracting(match -> match.group(1)).containsExactly("a.b");
+		assertThat(result.requires).extracting(match -> match.group(2)).containsExactly("x.y", "z.w");
+	}
+
+	@Test
+	void extractsModuleStatementsWithoutSemicolons() {
+		JsSourceScanner.ScanResult result = JsSourceScanner.scan("goog.module('a.b')\n" +
+				"const X = goog.require('x.y')\n\n" +
+				"const Y = goog.require('z.w');\n" +
+				"exports = X\n" +
+				"exports.foo = 1;\n");
+		assertThat(result.requires).extracting(match -> match.group(2)).containsExactly("x.y", "z.w");
+		assertThat(result.defaultExports).hasSize(1);
+		assertThat(result.dottedExports).extracting(match -> match.group(1)).containsExactly("foo");
+	}
+
+	@Test
+	void ignoresRequiresInCommentsAndStrings() {
+		JsSourceScanner.ScanResult result = JsSourceScanner.scan("goog.provide('a');\n" +
+				"/*\ngoog.require('in.block.comment');\n*/\n" +
+				"var s = 'x\\'\n" +
+				"goog.require('after.unterminated.string');\n" +
+				"var t = `\ngoog.require('in.template');\n`;\n" +
+				"var r = /'/;\n" +
+				"goog.require('after.regex');\n");
+		assertThat(result.requires).extracting(match -> match.group(2))
+				.containsExactly("after.unterminated.string", "after.regex");
+	}
+
+	@Test
+	void detectsRegexLiteralsAfterKeywords() {
+		JsSourceScanner.ScanResult result = JsSourceScanner.scan("goog.provide('a');\n" +
+				"a.isStar = function(s) {\n  return /[/*]/.test(s);\n};\n" +
+				"goog.require('after.return');\n" +
+				"a.isType = function(s) {\n  return typeof /[/*]/;\n};\n" +
+				"goog.require('after.typeof');\n");
+		assertThat(result.requires).extracting(match -> match.group(2)).containsExactly("after.return", "after.typeof");
+	}
+
+	@Test
+	void detectsDivisionsAfterIdentifiersAndPropertyNames() {
+		JsSourceScanner.ScanResult result = JsSourceScanner.scan("var x = returned / 2 /** @type {!a.B} */;\n" +
+				"var y = options.return / 2 /** @type {!a.C} */;\n" +
+				"var z = (1 + 2) / 2 /** @type {!a.D} */;\n");
+		assertThat(result.typeReferences).containsExactly("!a.B", "!a.C", "!a.D");
+	}
+
+	@Test
+	void extractsTypeReferencesOnlyFromComments() {
+		JsSourceScanner.ScanResult result = JsSourceScanner.scan("/** @param {!a.B} b\n * @return {?a.C} */\n" +
+				"var type = 'type {not.a.Type}';\n");
+		assertThat(result.typeReferences).containsExactly("!a.B", "?a.C");
+	}
+}
@@ -0,0 +1,49 @@
+package eu.cqse;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NamespaceTrieTest {
+
+	private final NamespaceTrie trie = new NamespaceTrie(List.of("goog", "goog.events", "goog.events.Event",
+			"goog.net.XhrLike", "a.B"));
+
+	@Test
+	void findsWholeTokensInOrder() {
+		assertThat(namespacesIn("!Array.<goog.events.Event>|?a.B=")).containsExactly("goog.events.Event", "a.B");
+		assertThat(namespacesIn("function(goog.events, a.B): goog.events.Event")).containsExactly("goog.events", "a.B",
+				"goog.events.Event");
+	}
+
+	@Test
+	void ignoresPrefixesAndExtensionsOfNamespaces() {
+		assertThat(namespacesIn("goog.events.EventTarget")).isEmpty();
+		assertThat(namespacesIn("goog.even")).isEmpty();
+		assertThat(namespacesIn("xa.B|a.B$|a.B.C")).isEmpty();
+	}
+
+	@Test
+	void ignoresNamespacesWithoutDot() {
+		assertThat(namespacesIn("goog")).isEmpty();
+	}
+
+	@Test
+	void resolvesAliasesOfProvidedNamespaces() {
+		assertThat(namespacesIn("goog.net.XhrLike.OrNative")).containsExactly("goog.net.XhrLike");
+		assertThat(namespacesIn(new NamespaceTrie(List.of("a.B")), "goog.net.XhrLike.OrNative")).isEmpty();
+	}
+
+	private List<String> namespacesIn(String typeExpression) {
+		return namespacesIn(trie, typeExpression);
+	}
+
+	private static List<String> namespacesIn(NamespaceTrie trie, String typeExpression) {
+		List<String> namespaces = new ArrayList<>();
+		trie.forEachNamespaceIn(typeExpression, namespaces::add);
+		return namespaces;
+	}
+}
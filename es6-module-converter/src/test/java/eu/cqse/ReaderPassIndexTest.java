@@ -0,0 +1,75 @@
+package eu.cqse;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReaderPassIndexTest {
+
+	@TempDir
+	File tempDir;
+
+	@Test
+	void entryIsReusedWhileFileIsUnchanged() throws Exception {
+		File file = TestFiles.write(tempDir, "a.js", "goog.provide('a');");
+		ReaderPassIndex index = ReaderPassIndex.load(new File(tempDir, "index.json"));
+		index.put(file, false, Collections.emptyList(), Collections.emptyList(), Collections.singletonList("a.B"));
+
+		assertThat(index.get(file)).isNotNull();
+		assertThat(index.get(file).typeReferences).containsExactly("a.B");
+	}
+
+	@Test
+	void entryIsInvalidatedByModificationTime() throws Exception {
+		File file = TestFiles.write(tempDir, "a.js", "goog.provide('a');");
+		ReaderPassIndex index = ReaderPassIndex.load(new File(tempDir, "index.json"));
+		index.put(file, false, Collections.emptyList(), Collections.emptyList(), Collections.emptyList());
+
+		file.setLastModified(file.lastModified() - 10_000);
+		assertThat(index.get(file)).isNull();
+	}
+
+	@Test
+	void entryIsInvalidatedBySizeChange() throws Exception {
+		File file = TestFiles.write(tempDir, "a.js", "goog.provide('a');");
+		ReaderPassIndex index = ReaderPassIndex.load(new File(tempDir, "index.json"));
+		index.put(file, false, Collections.emptyList(), Collections.emptyList(), Collections.emptyList());
+		long lastModified = file.lastModified();
+
+		FileUtils.writeFileContent(file, "goog.provide('a.b');");
+		file.setLastModified(lastModified);
+		assertThat(index.get(file)).isNull();
+	}
+
+	@Test
+	void savedIndexKeepsOnlyUsedEntries() throws Exception {
+		File used = TestFiles.write(tempDir, "used.js", "goog.provide('used');");
+		File unused = TestFiles.write(tempDir, "unused.js", "goog.provide('unused');");
+		File indexFile = new File(tempDir, "index.json");
+		ReaderPassIndex index = ReaderPassIndex.load(indexFile);
+		index.put(used, true, Collections.emptyList(), Collections.emptyList(), Collections.emptyList());
+		index.put(unused, false, Collections.emptyList(), Collections.emptyList(), Collections.emptyList());
+		index.save();
+
+		ReaderPassIndex reloaded = ReaderPassIndex.load(indexFile);
+		assertThat(reloaded.get(used).isTestOnly).isTrue();
+		reloaded.save();
+
+		ReaderPassIndex lastReload = ReaderPassIndex.load(indexFile);
+		assertThat(lastReload.get(used)).isNotNull();
+		assertThat(lastReload.get(unused)).isNull();
+	}
+
+	@Test
+	void disabledIndexStoresNothing() throws Exception {
+		File file = TestFiles.write(tempDir, "a.js", "goog.provide('a');");
+		ReaderPassIndex.DISABLED.put(file, false, Collections.emptyList(), Collections.emptyList(),
+				Collections.emptyList());
+
+		assertThat(ReaderPassIndex.DISABLED.get(file)).isNull();
+	}
+}
@@ -1,42 +1,114 @@
 package eu.cqse;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
 class ReaderPassTest {
 
+	@TempDir
+	File tempDir;
+
 	@Test
 	void extractExportsOfGoogModuleSingleNamedExport() {
-		List<GoogModuleExport> googModuleExports = ReaderPass.extractExportsOfGoogModule("exports = {\r\ntest:test\r\n};");
+		List<GoogModuleExport> googModuleExports = ReaderPass.extractExportsOfGoogModule("exports = {\r\ntest:test\r\n};", "a.b");
 		assertThat(googModuleExports.stream().map(e -> e.exportName.internalName)).containsExactly("test");
 	}
 
 	@Test
 	void extractExportsOfGoogModuleTrailingComma() {
-		List<GoogModuleExport> googModuleExports = ReaderPass.extractExportsOfGoogModule("exports = {\ntest:test,\n};");
+		List<GoogModuleExport> googModuleExports = ReaderPass.extractExportsOfGoogModule("exports = {\ntest:test,\n};", "a.b");
 		assertThat(googModuleExports.stream().map(e -> e.exportName.internalName)).containsExactly("test");
 	}
 
 	@Test
 	void extractExportsOfGoogModuleMultipleNamedExports() {
-		List<GoogModuleExport> googModuleExports = ReaderPass.extractExportsOfGoogModule("exports = {\ntest:test, \nsome:some\n};");
+		List<GoogModuleExport> googModuleExports = ReaderPass.extractExportsOfGoogModule("exports = {\ntest:test, \nsome:some\n};", "a.b");
 		assertThat(googModuleExports.stream().map(e -> e.exportName.internalName)).containsExactly("test", "some");
 	}
 
 	@Test
 	void extractExportsOfGoogModuleMultipleNamedExportsWithBlockComment() {
-		List<GoogModuleExport> googModuleExports = ReaderPass.extractExportsOfGoogModule("exports = {\ntest:testInt, \nsome\n, /** @package */ \nmore: /** @package : dfg */ moreint};");
+		List<GoogModuleExport> googModuleExports = ReaderPass.extractExportsOfGoogModule("exports = {\ntest:testInt, \nsome\n, /** @package */ \nmore: /** @package : dfg */ moreint};", "a.b");
 		assertThat(googModuleExports.stream().map(e -> e.exportName.internalName)).containsExactly("testInt", "some", "moreint");
 		assertThat(googModuleExports.stream().map(e -> e.exportName.externalName)).containsExactly("test", "some", "more");
 	}
 
 	@Test
 	void extractExportsOfGoogModuleMultipleNamedExportsWithLineComment() {
-		List<GoogModuleExport> googModuleExports = ReaderPass.extractExportsOfGoogModule("exports = {\ntest:testInt, \nsome\n, // Some info \nmore: // @also here with colon(:)\n moreint};");
+		List<GoogModuleExport> googModuleExports = ReaderPass.extractExportsOfGoogModule("exports = {\ntest:testInt, \nsome\n, // Some info \nmore: // @also here with colon(:)\n moreint};", "a.b");
 		assertThat(googModuleExports.stream().map(e -> e.exportName.internalName)).containsExactly("testInt", "some", "moreint");
 		assertThat(googModuleExports.stream().map(e -> e.exportName.externalName)).containsExactly("test", "some", "more");
 	}
-}
\ No newline at end of file
+
+	@Test
+	void rederiveReadsOnlyFilesChangedSinceTheGraphHasBeenBuilt() throws IOException {
+		File dir = new File(tempDir, "closure-library");
+		File a = TestFiles.write(dir, "a.js", "goog.provide('x.a');\n");
+		File b = TestFiles.write(dir, "b.js", "goog.provide('x.b');\n\ngoog.require('x.a');\n");
+		SourceStore sources = new SourceStore();
+		ReaderPass graph = new ReaderPass(sources);
+		graph.process(dir);
+
+		sources.write(a, sources.read(a));
+		sources.write(b, "goog.provide('x.b');\n\ngoog.require('x.a');\ngoog.require('x.c');\n");
+		File c = new File(dir, "c.js");
+		sources.write(c, "goog.provide('x.c');\n");
+		ReaderPass derived = graph.rederive(dir);
+
+		assertThat(derived.providesByFile.get(a).iterator().next()).isSameAs(graph.providesByFile.get(a).iterator().next());
+		assertThat(derived.requiresByFile.get(b).stream().map(require -> require.requiredNamespace)).containsExactly("x.a", "x.c");
+		assertThat(derived.filesByNamespace.get("x.c")).isEqualTo(c);
+
+		sources.write(a, "goog.provide('x.a2');\n");
+		assertThat(derived.rederive(dir).filesByNamespace.get("x.a2")).isEqualTo(a);
+	}
+
+	@Test
+	void providesAndRequiresShareTheirNamespaces() throws IOException {
+		File dir = new File(tempDir, "closure-library");
+		File a = TestFiles.write(dir, "a.js", "goog.provide('x.a');\n");
+		File b = TestFiles.write(dir, "b.js", "goog.provide('x.b');\n\ngoog.require('x.a');\n");
+		ReaderPass graph = new ReaderPass(new SourceStore());
+		graph.process(dir);
+
+		String providedNamespace = graph.providesByFile.get(a).iterator().next().namespace;
+		assertThat(graph.requiresByFile.get(b).iterator().next().requiredNamespace).isSameAs(providedNamespace);
+	}
+
+	@Test
+	void getImportersFollowsRequiresUpToTheGivenDepth() throws IOException {
+		File dir = new File(tempDir, "closure-library");
+		TestFiles.write(dir, "a.js", "goog.provide('x.a');\n");
+		File b = TestFiles.write(dir, "b.js", "goog.provide('x.b');\n\ngoog.require('x.a');\n");
+		File c = TestFiles.write(dir, "c.js", "goog.provide('x.c');\n\ngoog.require('x.b');\n");
+		File d = TestFiles.write(dir, "d.js", "goog.provide('x.d');\n\ngoog.require('x.c');\n");
+		File typeUser = TestFiles.write(dir, "typeUser.js", "goog.provide('x.typeUser');\n\n/** @param {!x.a} a */\n"
+				+ "x.typeUser = function(a) {};\n");
+		ReaderPass graph = new ReaderPass(new SourceStore());
+		graph.process(dir);
+
+		assertThat(graph.getImporters(List.of("x.a"), 1)).containsExactlyInAnyOrder(b, typeUser);
+		assertThat(graph.getImporters(List.of("x.a"), 2)).containsExactlyInAnyOrder(b, typeUser, c);
+		assertThat(graph.getImporters(List.of("x.a"), Integer.MAX_VALUE)).hasSize(4).endsWith(c, d);
+		assertThat(graph.getImporters(List.of("x.c", "x.typeUser"), Integer.MAX_VALUE)).containsExactly(d);
+		assertThat(graph.getImporters(List.of("x.unknown"), Integer.MAX_VALUE)).isEmpty();
+	}
+
+	@Test
+	void getImportersTerminatesOnCycles() throws IOException {
+		File dir = new File(tempDir, "closure-library");
+		File a = TestFiles.write(dir, "a.js", "goog.provide('x.a');\n\ngoog.forwardDeclare('x.c');\n");
+		File b = TestFiles.write(dir, "b.js", "goog.provide('x.b');\n\ngoog.require('x.a');\n");
+		File c = TestFiles.write(dir, "c.js", "goog.provide('x.c');\n\ngoog.require('x.b');\n");
+		ReaderPass graph = new ReaderPass(new SourceStore());
+		graph.process(dir);
+
+		assertThat(graph.getImporters(List.of("x.a"), Integer.MAX_VALUE)).containsExactly(b, c, a);
+	}
+}
@@ -0,0 +1,61 @@
+package eu.cqse;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RunReportTest {
+
+	@Test
+	void concurrentReportsRecordTheirOwnPasses() throws Exception {
+		RunReport first = new RunReport();
+		RunReport second = new RunReport();
+		CountDownLatch bothMeasuring = new CountDownLatch(2);
+		Thread otherThread = new Thread(() -> {
+			try {
+				second.measure("second", () -> {
+					bothMeasuring.countDown();
+					bothMeasuring.await();
+					RunReport.recordBytesIn("abc");
+				});
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+		});
+		otherThread.start();
+		first.measure("first", () -> {
+			bothMeasuring.countDown();
+			bothMeasuring.await();
+			RunReport.recordBytesIn("a");
+		});
+		otherThread.join();
+
+		assertThat(first.passes.get(0).bytesIn).isEqualTo(1);
+		assertThat(second.passes.get(0).bytesIn).isEqualTo(3);
+	}
+
+	@Test
+	void filesOfWorkerThreadsAreAttributedToThePass() throws Exception {
+		RunReport report = new RunReport();
+		report.measure("pass", () -> FileUtils.processInParallel(List.of(new File("a.js"), new File("b.js")),
+				file -> RunReport.recordBytesOut("ab"), 2));
+
+		RunReport.PassReport pass = report.passes.get(0);
+		assertThat(pass.files.stream().map(file -> file.path)).containsExactlyInAnyOrder("a.js", "b.js");
+		assertThat(pass.bytesOut).isEqualTo(4);
+	}
+
+	@Test
+	void recordingOutsideOfPassesIsIgnored() throws Exception {
+		RunReport report = new RunReport();
+		RunReport.recordBytesIn("ignored");
+		report.measure("pass", () -> RunReport.recordBytesIn("ab"));
+		RunReport.recordBytesIn("ignored");
+
+		assertThat(report.passes.get(0).bytesIn).isEqualTo(2);
+	}
+}
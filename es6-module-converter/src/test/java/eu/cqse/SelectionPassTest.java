@@ -0,0 +1,81 @@
+package eu.cqse;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SelectionPassTest {
+
+	@TempDir
+	File tempDir;
+
+	private File a;
+	private File b;
+	private File c;
+	private File shared;
+	private File sharedTest;
+	private ReaderPass graph;
+
+	@BeforeEach
+	void readCorpus() throws IOException {
+		File dir = new File(tempDir, "closure-library");
+		a = TestFiles.write(dir, "a.js", "goog.provide('x.a');\n\ngoog.require('x.shared');\n");
+		b = TestFiles.write(dir, "b.js", "goog.provide('x.b');\n\ngoog.require('x.shared');\ngoog.require('x.c');\n");
+		c = TestFiles.write(dir, "c.js", "goog.provide('x.c');\ngoog.provide('x.c.Other');\n\ngoog.require('x.b');\n");
+		shared = TestFiles.write(dir, "shared.js", "goog.provide('x.shared');\n");
+		sharedTest = TestFiles.write(dir, "shared_test_helper.js", "goog.provide('x.sharedTest');\n");
+		TestFiles.write(dir, "unused.js", "goog.provide('x.unused');\n");
+		graph = new ReaderPass(new SourceStore());
+		graph.process(dir);
+	}
+
+	@Test
+	void marksEachFileWithTheProfilesRequiringIt() {
+		Map<File, Long> profiles = new SelectionPass().process(graph, false,
+				List.of(Set.of("x.a"), Set.of("x.b"), Set.of("x.c.Other")));
+
+		assertThat(profiles).containsOnlyKeys(a, b, c, shared);
+		assertThat(profiles).containsEntry(a, 0b001L);
+		assertThat(profiles).containsEntry(b, 0b110L);
+		assertThat(profiles).containsEntry(c, 0b110L);
+		assertThat(profiles).containsEntry(shared, 0b111L);
+	}
+
+	@Test
+	void includesTestsOfSelectedNamespaces() {
+		Map<File, Long> profiles = new SelectionPass().process(graph, true, List.of(Set.of("x.a")));
+
+		assertThat(profiles).containsOnlyKeys(a, shared, sharedTest);
+		assertThat(profiles).containsEntry(sharedTest, 1L);
+	}
+
+	@Test
+	void supportsAsManyProfilesAsBitsOfALong() {
+		List<Set<String>> profiles = new ArrayList<>(Collections.nCopies(SelectionPass.MAX_PROFILES - 1, Set.of("x.a")));
+		profiles.add(Set.of("x.b"));
+
+		Map<File, Long> profilesByFile = new SelectionPass().process(graph, false, profiles);
+		assertThat(profilesByFile).containsEntry(a, Long.MAX_VALUE);
+		assertThat(profilesByFile).containsEntry(b, Long.MIN_VALUE);
+		assertThat(profilesByFile).containsEntry(shared, -1L);
+
+		profiles.add(Set.of("x.c"));
+		assertThrows(IllegalArgumentException.class, () -> new SelectionPass().process(graph, false, profiles));
+	}
+
+	@Test
+	void rejectsUnknownNamespaces() {
+		assertThrows(AssertionError.class, () -> new SelectionPass().process(graph, false, List.of(Set.of("x.missing"))));
+	}
+}
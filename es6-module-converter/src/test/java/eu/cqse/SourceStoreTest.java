@@ -0,0 +1,150 @@
+package eu.cqse;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SourceStoreTest {
+
+	@TempDir
+	File dir;
+
+	@Test
+	void writesAreOnlyVisibleOnDiskAfterFlush() throws IOException {
+		File file = new File(dir, "a.js");
+		FileUtils.writeFileContent(file, "old");
+		SourceStore sources = new SourceStore();
+
+		sources.write(file, "new");
+
+		assertThat(sources.read(file)).isEqualTo("new");
+		assertThat(FileUtils.getFileContentSafe(file)).isEqualTo("old");
+		sources.flush();
+		assertThat(FileUtils.getFileContentSafe(file)).isEqualTo("new");
+	}
+
+	@Test
+	void createdFilesAreListedBeforeFlush() throws IOException {
+		FileUtils.writeFileContent(new File(dir, "a.js"), "a");
+		SourceStore sources = new SourceStore();
+		File created = new File(dir, "sub/b.js");
+
+		sources.write(created, "b");
+
+		assertThat(sources.exists(created)).isTrue();
+		assertThat(sources.listFiles(dir)).containsExactlyInAnyOrder(new File(dir, "a.js"), created);
+		sources.flush();
+		assertThat(FileUtils.getFileContentSafe(created)).isEqualTo("b");
+	}
+
+	@Test
+	void deletedFilesAreRemovedOnFlush() throws IOException {
+		File file = new File(dir, "a.js");
+		FileUtils.writeFileContent(file, "a");
+		SourceStore sources = new SourceStore();
+
+		sources.delete(file);
+
+		assertThat(sources.exists(file)).isFalse();
+		assertThat(sources.listFiles(dir)).isEmpty();
+		assertThat(file.isFile()).isTrue();
+		sources.flush();
+		assertThat(file.isFile()).isFalse();
+	}
+
+	@Test
+	void writingDeletedFileRestoresIt() throws IOException {
+		File file = new File(dir, "a.js");
+		FileUtils.writeFileContent(file, "a");
+		SourceStore sources = new SourceStore();
+
+		sources.delete(file);
+		sources.write(file, "b");
+		sources.flush();
+
+		assertThat(FileUtils.getFileContentSafe(file)).isEqualTo("b");
+	}
+
+	@Test
+	void flushReplacesHardLinkedFiles() throws IOException {
+		File input = new File(dir, "input.js");
+		FileUtils.writeFileContent(input, "input");
+		File output = new File(dir, "output.js");
+		java.nio.file.Files.createLink(output.toPath(), input.toPath());
+		SourceStore sources = new SourceStore();
+
+		sources.write(output, "converted");
+		sources.flush();
+
+		assertThat(FileUtils.getFileContentSafe(input)).isEqualTo("input");
+		assertThat(FileUtils.getFileContentSafe(output)).isEqualTo("converted");
+	}
+
+	@Test
+	void onlyChangesAdvanceTheGeneration() throws IOException {
+		File file = new File(dir, "a.js");
+		FileUtils.writeFileContent(file, "a");
+		SourceStore sources = new SourceStore();
+		sources.read(file);
+		long generation = sources.getGeneration();
+
+		sources.write(file, "a");
+		assertThat(sources.isModifiedSince(file, generation)).isFalse();
+		assertThat(sources.getGeneration()).isEqualTo(generation);
+
+		sources.write(file, "b");
+		assertThat(sources.isModifiedSince(file, generation)).isTrue();
+		assertThat(sources.isModifiedSince(file, sources.getGeneration())).isFalse();
+	}
+
+	@Test
+	void modificationsAreTrackedAcrossFlushes() throws IOException {
+		File file = new File(dir, "a.js");
+		FileUtils.writeFileContent(file, "a");
+		SourceStore sources = new SourceStore();
+		long generation = sources.getGeneration();
+
+		sources.write(file, "b");
+		sources.flush();
+		assertThat(sources.isModifiedSince(file, generation)).isTrue();
+
+		long flushedGeneration = sources.getGeneration();
+		sources.delete(file);
+		assertThat(sources.isModifiedSince(file, flushedGeneration)).isTrue();
+	}
+
+	@Test
+	void readIfContainsAnyOfKeepsOnlyMatchingFiles() throws IOException {
+		File provide = new File(dir, "provide.js");
+		FileUtils.writeFileContent(provide, "\uFEFF// \u00e4\ngoog.provide('a');\n");
+		File externs = new File(dir, "externs.js");
+		FileUtils.writeFileContent(externs, "/** A module that provides nothing. */\nvar x;\n");
+		SourceStore sources = new SourceStore();
+
+		assertThat(sources.readIfContainsAnyOf(provide, "goog.provide(", "goog.module(")).isEqualTo("// \u00e4\ngoog.provide('a');\n");
+		assertThat(sources.readIfContainsAnyOf(externs, "goog.provide(", "goog.module(")).isNull();
+
+		FileUtils.writeFileContent(provide, "changed on disk");
+		assertThat(sources.read(provide)).isEqualTo("// \u00e4\ngoog.provide('a');\n");
+		sources.write(externs, "goog.module('b');");
+		assertThat(sources.readIfContainsAnyOf(externs, "goog.provide(", "goog.module(")).isEqualTo("goog.module('b');");
+	}
+
+	@Test
+	void spacesInMarkersMatchAnyWhitespace() throws IOException {
+		File spaced = new File(dir, "spaced.js");
+		FileUtils.writeFileContent(spaced, "goog\n  .provide ('a');\n");
+		File other = new File(dir, "other.js");
+		FileUtils.writeFileContent(other, "goog.provider('a');\n");
+		SourceStore sources = new SourceStore();
+
+		assertThat(sources.readIfContainsAnyOf(spaced, "goog . provide (")).isEqualTo("goog\n  .provide ('a');\n");
+		assertThat(sources.readIfContainsAnyOf(other, "goog . provide (")).isNull();
+		sources.write(other, "goog . provide('b');");
+		assertThat(sources.readIfContainsAnyOf(other, "goog . provide (")).isEqualTo("goog . provide('b');");
+	}
+}
@@ -0,0 +1,19 @@
+package eu.cqse;
+
+import java.io.File;
+import java.io.IOException;
+
+/** Creates the input files of tests. */
+final class TestFiles {
+
+	private TestFiles() {
+	}
+
+	/** Writes the given content to the file at the given path within the given directory and returns the file. */
+	static File write(File dir, String path, String content) throws IOException {
+		File file = new File(dir, path);
+		file.getParentFile().mkdirs();
+		FileUtils.writeFileContent(file, content);
+		return file;
+	}
+}
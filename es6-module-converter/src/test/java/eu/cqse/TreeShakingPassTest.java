@@ -0,0 +1,105 @@
+package eu.cqse;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TreeShakingPassTest {
+
+	@TempDir
+	File tempDir;
+
+	private final SourceStore sources = new SourceStore();
+
+	@Test
+	void removesDeadDeclarationsAndTheirPropertyAssignments() {
+		File root = write("root.js", "import {Used, Unused} from './lib.js';\n\nexport function main() {\n  return new Used();\n}\n");
+		File lib = write("lib.js", "export class Used {}\n\nUsed.VALUE = 1;\n\n"
+				+ "export class Unused {}\n\nUnused.create = function() {\n  return new Unused();\n};\n");
+
+		assertThat(shake(List.of(root, lib), root)).isEqualTo(2);
+		assertThat(sources.read(lib)).isEqualTo("export class Used {}\n\nUsed.VALUE = 1;\n\n");
+		assertThat(sources.read(root)).startsWith("import {Used} from './lib.js';\n");
+	}
+
+	@Test
+	void keepsDeclarationsAndPropertyAssignmentsWithSideEffects() {
+		File root = write("root.js", "import {used} from './lib.js';\n\nexport const main = used;\n");
+		File lib = write("lib.js", "export const used = 1;\n\nexport class Registry {}\n\n"
+				+ "Registry.instance = createInstance();\n\nexport const registered = register(Registry);\n\n"
+				+ "export const unused = {a: 1, b: [2, 'c']};\n");
+
+		shake(List.of(root, lib), root);
+		assertThat(sources.read(lib)).isEqualTo("export const used = 1;\n\nexport class Registry {}\n\n"
+				+ "Registry.instance = createInstance();\n\nexport const registered = register(Registry);\n\n");
+	}
+
+	@Test
+	void keepsClassesWithSideEffectsWhenTheyAreDefined() {
+		File root = write("root.js", "export const main = 1;\n");
+		File lib = write("lib.js", "class Base {}\n\nclass Mixed extends mixin(Base) {}\n\n"
+				+ "class Initialized {\n  static instance = create();\n}\n\n"
+				+ "class Blocked {\n  static {\n    register();\n  }\n}\n\n"
+				+ "class Plain extends Base {\n  static create() {\n    return new Plain();\n  }\n}\n\n"
+				+ "const Expression = class extends mixin(Base) {};\n");
+
+		shake(List.of(root, lib), root);
+		assertThat(sources.read(lib)).isEqualTo("class Base {}\n\nclass Mixed extends mixin(Base) {}\n\n"
+				+ "class Initialized {\n  static instance = create();\n}\n\n"
+				+ "class Blocked {\n  static {\n    register();\n  }\n}\n\n"
+				+ "const Expression = class extends mixin(Base) {};\n");
+	}
+
+	@Test
+	void prunesExportLists() {
+		File root = write("root.js", "import {a} from './lib.js';\n\nexport const main = a;\n");
+		File lib = write("lib.js", "const a = 1;\n\nconst b = 2;\n\nfunction c() {}\n\nexport {a, b as renamed, c};\n");
+
+		shake(List.of(root, lib), root);
+		assertThat(sources.read(lib)).isEqualTo("const a = 1;\n\nexport {a};\n");
+	}
+
+	@Test
+	void namespaceImportsKeepAllExports() {
+		File root = write("root.js", "import * as lib from './lib.js';\n\nexport const main = lib.a;\n");
+		File lib = write("lib.js", "export const a = 1;\n\nexport const b = 2;\n\nconst internal = 3;\n");
+
+		shake(List.of(root, lib), root);
+		assertThat(sources.read(lib)).isEqualTo("export const a = 1;\n\nexport const b = 2;\n\n");
+	}
+
+	@Test
+	void keepsAllRedeclarations() {
+		File root = write("root.js", "export const main = 1;\n");
+		File lib = write("lib.js", "var a = 1;\n\nvar a = 2;\n\nconst unused = 3;\n");
+
+		shake(List.of(root, lib), root);
+		assertThat(sources.read(lib)).isEqualTo("var a = 1;\n\nvar a = 2;\n\n");
+	}
+
+	@Test
+	void unusedImportsOfFilesWithSideEffectsBecomeSideEffectImports() {
+		File root = write("root.js", "import {a} from './effects.js';\nimport * as pure from './pure.js';\n\n"
+				+ "export const main = 1;\n\nfunction unused() {\n  return a + pure.b;\n}\n");
+		File effects = write("effects.js", "export const a = 1;\n\nregisterPlugin();\n");
+		File pure = write("pure.js", "export const b = 1;\n");
+
+		shake(List.of(root, effects, pure), root);
+		assertThat(sources.read(root)).isEqualTo("import './effects.js';\n\nexport const main = 1;\n\n");
+	}
+
+	private int shake(List<File> files, File root) {
+		return new TreeShakingPass(sources).process(files, Set.of(root));
+	}
+
+	private File write(String name, String content) {
+		File file = new File(tempDir, name);
+		sources.write(file, content);
+		return file;
+	}
+}